@@ -7,13 +7,14 @@ layout (location = 2) in float aStatic;
 
 out vec3 fColor;
 
-uniform mat4 uView;
-uniform mat4 uProjection;
-uniform mat4 uStaticProjection;
+layout (std140) uniform Camera {
+    mat4 uWorldProj;
+    mat4 uStaticProj;
+};
 
 void main() {
     fColor = aColor;
-    gl_Position = (aStatic == 0 ? uProjection * uView : uStaticProjection) * vec4(aPos, -10, 1);
+    gl_Position = (aStatic == 0 ? uWorldProj : uStaticProj) * vec4(aPos, -10, 1);
 }
 
 #type fragment
@@ -1,21 +1,35 @@
 #type vertex
 #version 330 core
-layout (location = 0) in vec3 aPos;
+layout (location = 0) in vec2 aPos;
 layout (location = 1) in vec4 aColor;
 layout (location = 2) in vec2 aTexCoords;
-layout (location = 3) in float aStatic;
-
-uniform mat4 uWorldProj;
-uniform mat4 uStaticProj;
+layout (location = 3) in float aFlags;
+layout (location = 4) in float aFrameCount;
+layout (location = 5) in float aFrameStride;
+layout (location = 6) in vec2 aOrigin;
+
+layout (std140) uniform Camera {
+    mat4 uWorldProj;
+    mat4 uStaticProj;
+};
+uniform float uPosScale;
+uniform float uTime;
+uniform float uFrameTime;
 uniform sampler2D uTexture;
 
 out vec4 fColor;
 out vec2 fTexCoords;
 
 void main() {
-    fColor = aColor;
-    fTexCoords = aTexCoords / textureSize(uTexture, 0);
-    gl_Position = (aStatic == 0 ? uWorldProj : uStaticProj) * vec4(aPos, 1);
+    int flags = int(aFlags);
+    // Chunk vertices carry a single light level rather than a color
+    fColor = (flags & 2) != 0 ? vec4(aColor.rrr, 1) : aColor;
+    // Animated textures step through frames stacked frameStride texels apart
+    vec2 texCoords = aTexCoords;
+    if (aFrameCount > 1) texCoords.y += mod(floor(uTime / uFrameTime), aFrameCount) * aFrameStride;
+    fTexCoords = texCoords / textureSize(uTexture, 0);
+    vec2 pos = aOrigin + aPos * uPosScale;
+    gl_Position = ((flags & 1) != 0 ? uStaticProj : uWorldProj) * vec4(pos, 0, 1);
 }
 
 #type fragment
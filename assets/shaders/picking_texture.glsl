@@ -1,26 +1,38 @@
 #type vertex
 #version 330 core
-layout (location=0) in vec3 aPos;
+layout (location=0) in vec2 aPos;
 layout (location=1) in vec4 aColor;
 layout (location=2) in vec2 aTexCoords;
-layout (location=3) in float aTexId;
-layout (location=4) in float aEntityId;
-
-uniform mat4 uProjection;
-uniform mat4 uView;
+layout (location=3) in float aFlags;
+layout (location=4) in float aFrameCount;
+layout (location=5) in float aFrameStride;
+layout (location=6) in vec2 aOrigin;
+
+layout (std140) uniform Camera {
+    mat4 uWorldProj;
+    mat4 uStaticProj;
+};
+uniform float uPosScale;
+uniform float uTime;
+uniform float uFrameTime;
+uniform sampler2D uTexture;
 
 out vec4 fColor;
 out vec2 fTexCoords;
-out float fTexId;
 out float fEntityId;
 
 void main() {
-    fColor = aColor;
-    fTexCoords = aTexCoords;
-    fTexId = aTexId;
-    fEntityId = aEntityId;
-
-    gl_Position = uProjection * uView * vec4(aPos, 1.0);
+    int flags = int(aFlags);
+    fColor = (flags & 2) != 0 ? vec4(aColor.rrr, 1) : aColor;
+    // Animated textures step through frames stacked frameStride texels apart
+    vec2 texCoords = aTexCoords;
+    if (aFrameCount > 1) texCoords.y += mod(floor(uTime / uFrameTime), aFrameCount) * aFrameStride;
+    fTexCoords = texCoords / textureSize(uTexture, 0);
+    // The packed vertex format has no entity id yet
+    fEntityId = 0;
+
+    vec2 pos = aOrigin + aPos * uPosScale;
+    gl_Position = ((flags & 1) != 0 ? uStaticProj : uWorldProj) * vec4(pos, 0, 1);
 }
 
 #type fragment
@@ -28,43 +40,16 @@ void main() {
 
 in vec4 fColor;
 in vec2 fTexCoords;
-in float fTexId;
 in float fEntityId;
 
-uniform sampler2D uTextures[8];
+uniform sampler2D uTexture;
 
 out vec3 color;
 
 void main() {
-    vec4 texColor = vec4(1, 1, 1, 1);
-    switch (int(fTexId)) {
-        case 0:
-            break;
-        case 1:
-            texColor = fColor * texture(uTextures[1], fTexCoords);
-            break;
-        case 2:
-            texColor = fColor * texture(uTextures[2], fTexCoords);
-            break;
-        case 3:
-            texColor = fColor * texture(uTextures[3], fTexCoords);
-            break;
-        case 4:
-            texColor = fColor * texture(uTextures[4], fTexCoords);
-            break;
-        case 5:
-            texColor = fColor * texture(uTextures[5], fTexCoords);
-            break;
-        case 6:
-            texColor = fColor * texture(uTextures[6], fTexCoords);
-            break;
-        case 7:
-            texColor = fColor * texture(uTextures[7], fTexCoords);
-            break;
-    }
-
+    vec4 texColor = fColor * texture(uTexture, fTexCoords);
     if (texColor.a < 0.5) {
         discard;
     }
     color = vec3(fEntityId, fEntityId, fEntityId);
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package util;
+
+import com.sun.management.ThreadMXBean;
+import org.joml.Vector2i;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+
+public class LongMapBenchmark {
+
+    // Chunk lookups by block position, the way Scene used to do them and the way it does now.
+    // Run with -XX:-DoEscapeAnalysis (the Gradle task does), or the JIT can hide the Vector2i keys
+    private static final int LOOKUPS = 10_000_000;
+    private static final int ROUNDS = 5;
+
+    private static final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        HashMap<Vector2i, Object> boxed = new HashMap<>();
+        LongMap<Object> packed = new LongMap<>();
+        for (int x = -16; x < 16; x++) {
+            for (int y = -16; y < 16; y++) {
+                Object chunk = new Object();
+                boxed.put(new Vector2i(x, y), chunk);
+                packed.put(LongMap.key(x, y), chunk);
+            }
+        }
+
+        long sink = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytes = allocatedBytes(), start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                int x = (i * 7) % 512 - 256, y = (i * 13) % 512 - 256;
+                sink += boxed.get(new Vector2i(Math.floorDiv(x, 16), Math.floorDiv(y, 16))).hashCode() & 1;
+            }
+            long boxedBytes = allocatedBytes() - bytes, boxedNanos = System.nanoTime() - start;
+
+            bytes = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                int x = (i * 7) % 512 - 256, y = (i * 13) % 512 - 256;
+                sink += packed.get(Math.floorDiv(x, 16), Math.floorDiv(y, 16)).hashCode() & 1;
+            }
+            long packedBytes = allocatedBytes() - bytes, packedNanos = System.nanoTime() - start;
+
+            System.out.printf("HashMap<Vector2i>: %d ms, %.2f B/lookup   LongMap: %d ms, %.2f B/lookup%n",
+                    boxedNanos / 1000000, (double) boxedBytes / LOOKUPS, packedNanos / 1000000, (double) packedBytes / LOOKUPS);
+        }
+        // Keeps the lookups from being optimized away
+        if (sink == 42) System.out.println();
+    }
+
+    private static long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
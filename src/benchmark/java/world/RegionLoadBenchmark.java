@@ -0,0 +1,152 @@
+package world;
+
+import block.BlockStorage;
+import block.Chunk;
+import block.ChunkData;
+import org.joml.Vector2i;
+import util.ByteBufferInputStream;
+import util.LongMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class RegionLoadBenchmark {
+
+    // Loads a 1000-chunk generated world from its region files, the old way (seek, read into a byte[],
+    // inflate into another, decode through a stream) and the way Scene does now (inflate from the mapped file)
+    private static final int CHUNKS_X = 40, CHUNKS_Y = 25;
+    private static final int ROUNDS = 40;
+
+    private static long sink;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("region-benchmark").toFile();
+        try {
+            writeWorld(directory);
+
+            long[] stream = new long[ROUNDS], mapped = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                stream[round] = loadStream(directory);
+                mapped[round] = loadMapped(directory);
+            }
+            Arrays.sort(stream);
+            Arrays.sort(mapped);
+            System.out.printf("%d chunks, median of %d rounds: stream %.2f ms, mapped %.2f ms%n",
+                    CHUNKS_X * CHUNKS_Y, ROUNDS, stream[ROUNDS / 2] / 1e6, mapped[ROUNDS / 2] / 1e6);
+        } finally {
+            try (var files = Files.walk(directory.toPath())) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+        // Keeps the decoding from being optimized away
+        if (sink == 42) System.out.println();
+    }
+
+    private static void writeWorld(File directory) throws IOException {
+        RegionStorage regions = new RegionStorage(directory);
+        WorldGenerator generator = new WorldGenerator(42);
+        byte[] lights = new byte[Chunk.SIZE * Chunk.SIZE];
+        for (int chunkY = 0; chunkY < CHUNKS_Y; chunkY++) {
+            for (int chunkX = 0; chunkX < CHUNKS_X; chunkX++) {
+                // Rows from deep stone up past the surface, so palettes range from uniform to mixed
+                int y = chunkY - 16;
+                ChunkData data = new ChunkData(new Vector2i(chunkX, y), generator.generateChunk(chunkX, y), lights);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                data.write(new DataOutputStream(bytes));
+                regions.writeChunk(chunkX, y, RegionFile.compress(bytes.toByteArray()));
+            }
+        }
+        regions.close();
+    }
+
+    private static long loadMapped(File directory) throws IOException {
+        RegionStorage regions = new RegionStorage(directory);
+        long start = System.nanoTime();
+        for (int chunkY = 0; chunkY < CHUNKS_Y; chunkY++) {
+            for (int chunkX = 0; chunkX < CHUNKS_X; chunkX++) {
+                ByteBuffer payload = regions.readChunkBuffer(chunkX, chunkY - 16);
+                decode(ChunkData.read(new Vector2i(chunkX, chunkY - 16), new DataInputStream(new ByteBufferInputStream(payload))));
+            }
+        }
+        long time = System.nanoTime() - start;
+        regions.close();
+        return time;
+    }
+
+    private static long loadStream(File directory) throws IOException {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        // Each region file is opened once, its header read in one go
+        HashMap<Long, StreamRegion> regions = new HashMap<>();
+        for (int chunkY = 0; chunkY < CHUNKS_Y; chunkY++) {
+            for (int chunkX = 0; chunkX < CHUNKS_X; chunkX++) {
+                int y = chunkY - 16;
+                int regionX = Math.floorDiv(chunkX, RegionFile.SIZE), regionY = Math.floorDiv(y, RegionFile.SIZE);
+                StreamRegion region = regions.get(LongMap.key(regionX, regionY));
+                if (region == null) {
+                    region = new StreamRegion(new File(directory, "r." + regionX + "." + regionY + ".region"));
+                    regions.put(LongMap.key(regionX, regionY), region);
+                }
+
+                int index = Math.floorMod(chunkX, RegionFile.SIZE) + Math.floorMod(y, RegionFile.SIZE) * RegionFile.SIZE;
+                byte[] stored = new byte[region.header.getInt(index * 8 + 4)];
+                region.file.seek((long) region.header.getInt(index * 8) * RegionFile.SECTOR_BYTES);
+                region.file.readFully(stored);
+
+                // The first byte names the compression, always deflate here
+                inflater.reset();
+                inflater.setInput(stored, 1, stored.length - 1);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(stored.length * 4);
+                byte[] buffer = new byte[4096];
+                try {
+                    while (!inflater.finished()) {
+                        out.write(buffer, 0, inflater.inflate(buffer));
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException(e);
+                }
+                decode(ChunkData.read(new Vector2i(chunkX, y), new DataInputStream(new ByteArrayInputStream(out.toByteArray()))));
+            }
+        }
+        long time = System.nanoTime() - start;
+        for (StreamRegion region : regions.values()) {
+            region.file.close();
+        }
+        inflater.end();
+        return time;
+    }
+
+    private static void decode(ChunkData data) {
+        BlockStorage blocks = data.getBlocks();
+        sink += blocks.getPaletteSize() + data.getLights()[3];
+    }
+
+    private static class StreamRegion {
+
+        private final RandomAccessFile file;
+        // Per chunk: first sector and stored length, big-endian ints
+        private final ByteBuffer header;
+
+        private StreamRegion(File path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            byte[] bytes = new byte[RegionFile.SIZE * RegionFile.SIZE * 8];
+            file.readFully(bytes);
+            header = ByteBuffer.wrap(bytes);
+        }
+
+    }
+
+}
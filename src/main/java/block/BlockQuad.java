@@ -55,6 +55,14 @@ public class BlockQuad {
         return image.getTexCoords(time);
     }
 
+    public int getFrameCount() {
+        return image.getFrameCount();
+    }
+
+    public int getFrameStride() {
+        return image.getFrameStride();
+    }
+
     public int getPos() {
         return pos;
     }
@@ -15,6 +15,14 @@ public class BlockState {
         this.values = values;
     }
 
+    public String[] getKeys() {
+        return keys;
+    }
+
+    public String[] getValues() {
+        return values;
+    }
+
     public boolean hasAttr(String key) {
         for (String k : keys) {
             if (k.equalsIgnoreCase(key)) {
@@ -0,0 +1,245 @@
+package block;
+
+import util.Logger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class BlockStorage {
+
+    private static final int CELLS = Chunk.SIZE * Chunk.SIZE;
+    private static final int MAX_BITS = 16;
+
+    // Palette entries are (type, state) pairs; states are compared by identity since
+    // BlockType.defaultState() hands out one shared instance per type
+    private BlockType[] paletteTypes;
+    private BlockState[] paletteStates;
+    private int paletteSize;
+
+    // Bit-packed palette indices, one per cell (x + y * SIZE). 0 bits means every cell uses entry 0.
+    private int bits;
+    private long[] data;
+
+    public BlockStorage() {
+        this(null, null);
+    }
+
+    public BlockStorage(BlockType type, BlockState state) {
+        paletteTypes = new BlockType[]{type};
+        paletteStates = new BlockState[]{state};
+        paletteSize = 1;
+        bits = 0;
+        data = null;
+    }
+
+    public BlockType getType(int index) {
+        return paletteTypes[getEntry(index)];
+    }
+
+    public BlockState getState(int index) {
+        return paletteStates[getEntry(index)];
+    }
+
+    public void set(int index, BlockType type, BlockState state) {
+        int entry = findEntry(type, state);
+        if (entry == -1) entry = addEntry(type, state);
+        setEntry(index, entry);
+    }
+
+    public void fill(BlockType type, BlockState state) {
+        paletteTypes = new BlockType[]{type};
+        paletteStates = new BlockState[]{state};
+        paletteSize = 1;
+        bits = 0;
+        data = null;
+    }
+
+    public BlockStorage copy() {
+        BlockStorage copy = new BlockStorage();
+        copy.paletteTypes = paletteTypes.clone();
+        copy.paletteStates = paletteStates.clone();
+        copy.paletteSize = paletteSize;
+        copy.bits = bits;
+        copy.data = data == null ? null : data.clone();
+        return copy;
+    }
+
+    public boolean isUniform() {
+        return bits == 0;
+    }
+
+    public int getPaletteSize() {
+        return paletteSize;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    // Palette state markers in the saved format
+    private static final byte STATE_NONE = 0, STATE_DEFAULT = 1, STATE_CUSTOM = 2;
+
+    public void write(DataOutput out) throws IOException {
+        // Compacts a copy, never this storage: snapshots are written on the saver thread while the game thread may copy them
+        BlockStorage compacted = copy();
+        compacted.compact();
+        out.writeShort(compacted.paletteSize);
+        for (int i = 0; i < compacted.paletteSize; i++) {
+            // Types are saved by name so reordering BlockType doesn't scramble old worlds
+            BlockType type = compacted.paletteTypes[i];
+            BlockState state = compacted.paletteStates[i];
+            out.writeUTF(type == null ? "" : type.name());
+            if (state == null) {
+                out.writeByte(STATE_NONE);
+            } else if (type != null && state == type.defaultState()) {
+                out.writeByte(STATE_DEFAULT);
+            } else {
+                out.writeByte(STATE_CUSTOM);
+                out.writeShort(state.getKeys().length);
+                for (int k = 0; k < state.getKeys().length; k++) {
+                    out.writeUTF(state.getKeys()[k]);
+                    out.writeUTF(state.getValues()[k]);
+                }
+            }
+        }
+        out.writeByte(compacted.bits);
+        if (compacted.data != null) {
+            for (long word : compacted.data) out.writeLong(word);
+        }
+    }
+
+    public static BlockStorage read(DataInput in) throws IOException {
+        BlockStorage storage = new BlockStorage();
+        int size = in.readUnsignedShort();
+        BlockType[] types = new BlockType[size];
+        BlockState[] states = new BlockState[size];
+        for (int i = 0; i < size; i++) {
+            String name = in.readUTF();
+            if (!name.isEmpty()) {
+                try {
+                    types[i] = BlockType.valueOf(name);
+                } catch (IllegalArgumentException e) {
+                    Logger.warning("Unknown block type", name, "in saved chunk, loading it as air.");
+                }
+            }
+
+            byte stateKind = in.readByte();
+            if (stateKind == STATE_DEFAULT) {
+                states[i] = types[i] == null ? null : types[i].defaultState();
+            } else if (stateKind == STATE_CUSTOM) {
+                String[] keys = new String[in.readUnsignedShort()];
+                String[] values = new String[keys.length];
+                for (int k = 0; k < keys.length; k++) {
+                    keys[k] = in.readUTF();
+                    values[k] = in.readUTF();
+                }
+                states[i] = new BlockState(keys, values);
+            }
+        }
+
+        int bits = in.readUnsignedByte();
+        if (size == 0 || bits > MAX_BITS || (bits != 0 && Integer.bitCount(bits) != 1) || size > Math.max(1, 1 << bits)) {
+            throw new IOException("Corrupt block palette");
+        }
+        storage.bits = bits;
+        storage.paletteSize = size;
+        storage.paletteTypes = Arrays.copyOf(types, Math.max(1, 1 << bits));
+        storage.paletteStates = Arrays.copyOf(states, Math.max(1, 1 << bits));
+        if (bits != 0) {
+            storage.data = new long[CELLS * bits / 64];
+            for (int i = 0; i < storage.data.length; i++) storage.data[i] = in.readLong();
+        }
+        return storage;
+    }
+
+    private int getEntry(int index) {
+        if (bits == 0) return 0;
+        int bitIndex = index * bits;
+        return (int) (data[bitIndex >>> 6] >>> (bitIndex & 63)) & ((1 << bits) - 1);
+    }
+
+    private void setEntry(int index, int entry) {
+        if (bits == 0) return;
+        int bitIndex = index * bits;
+        long mask = ((1L << bits) - 1) << (bitIndex & 63);
+        data[bitIndex >>> 6] = (data[bitIndex >>> 6] & ~mask) | ((long) entry << (bitIndex & 63));
+    }
+
+    private int findEntry(BlockType type, BlockState state) {
+        for (int i = 0; i < paletteSize; i++) {
+            if (paletteTypes[i] == type && paletteStates[i] == state) return i;
+        }
+        return -1;
+    }
+
+    private int addEntry(BlockType type, BlockState state) {
+        if (paletteSize >= 1 << bits) {
+            // Drop entries no cell refers to anymore before widening the indices
+            compact();
+            if (paletteSize >= 1 << bits) resize(bits == 0 ? 1 : Math.min(bits * 2, MAX_BITS));
+        }
+
+        paletteTypes[paletteSize] = type;
+        paletteStates[paletteSize] = state;
+        return paletteSize++;
+    }
+
+    public void compact() {
+        if (bits == 0) return;
+
+        int[] remap = new int[paletteSize];
+        for (int i = 0; i < CELLS; i++) {
+            remap[getEntry(i)] = 1;
+        }
+
+        int used = 0;
+        for (int i = 0; i < paletteSize; i++) {
+            if (remap[i] != 0) {
+                paletteTypes[used] = paletteTypes[i];
+                paletteStates[used] = paletteStates[i];
+                remap[i] = used++;
+            }
+        }
+        if (used == paletteSize) return;
+
+        Arrays.fill(paletteTypes, used, paletteSize, null);
+        Arrays.fill(paletteStates, used, paletteSize, null);
+        paletteSize = used;
+
+        int[] entries = new int[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            entries[i] = remap[getEntry(i)];
+        }
+
+        int newBits = 0;
+        while (1 << newBits < paletteSize) newBits = newBits == 0 ? 1 : newBits * 2;
+        repack(newBits, entries);
+    }
+
+    private void resize(int newBits) {
+        int[] entries = new int[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            entries[i] = getEntry(i);
+        }
+        repack(newBits, entries);
+    }
+
+    private void repack(int newBits, int[] entries) {
+        bits = newBits;
+        paletteTypes = Arrays.copyOf(paletteTypes, 1 << newBits);
+        paletteStates = Arrays.copyOf(paletteStates, 1 << newBits);
+
+        if (newBits == 0) {
+            data = null;
+            return;
+        }
+
+        data = new long[CELLS * newBits / 64];
+        for (int i = 0; i < CELLS; i++) {
+            setEntry(i, entries[i]);
+        }
+    }
+
+}
@@ -9,142 +9,93 @@ public class Chunk {
 
     public static final int SIZE = 16;
 
+    private static final int[] X_OFFSETS = {-1, 0, 1, -1, 1, -1, 0, 1};
+    private static final int[] Y_OFFSETS = {1, 1, 1, 0, 0, -1, -1, -1};
+
     private final Vector2i position;
     private final Scene world;
     private boolean isDirty;
+    // The 3x3 block of loaded chunks around this one, indexed by (dx + 1) + (dy + 1) * 3; kept up to date by Scene
+    private final Chunk[] neighbours = new Chunk[9];
 
-    private final BlockType[][] blockTypes;
-    private final BlockState[][] blockStates;
+    private final BlockStorage blocks;
     private final BlockQuad[][] blockQuads;
     private final boolean[][] blocksDirty;
-    private final int[][] blockLights;
-    private final int[][] skyLights;
+    // Blocks whose vertices need rewriting, one bit per x + y * SIZE
+    private final long[] meshDirty;
+    // Block light in the low nibble, sky light in the high nibble, indexed by x + y * SIZE
+    private final byte[] lights;
+    // Local y of the topmost block in each column, -1 for an empty column
+    private final int[] heights;
+    // Cells waiting for the LightEngine, one bit per x + y * SIZE
+    private final long[] lightsPending;
+    private boolean lightQueued;
+    // Blocks changed since the chunk was last saved
+    private boolean modified;
 
     public Chunk(Vector2i position, Scene world) {
+        this(position, world, new BlockStorage());
+    }
+
+    public Chunk(Vector2i position, Scene world, BlockStorage blocks) {
         this.position = position;
         this.world = world;
         this.isDirty = true;
 
-        blockTypes = new BlockType[SIZE][SIZE];
-        blockStates = new BlockState[SIZE][SIZE];
+        this.blocks = blocks;
         blockQuads = new BlockQuad[SIZE * 2][SIZE * 2];
         blocksDirty = new boolean[SIZE][SIZE];
-        blockLights = new int[SIZE][SIZE];
-        skyLights = new int[SIZE][SIZE];
-
-        for (int[] inner : skyLights) Arrays.fill(inner, 15);
+        meshDirty = new long[SIZE * SIZE / 64];
+        lights = new byte[SIZE * SIZE];
+        lightsPending = new long[SIZE * SIZE / 64];
+        heights = new int[SIZE];
+
+        Arrays.fill(lights, (byte) 0xF0);
+        for (int x = 0; x < SIZE; x++) {
+            int height = SIZE - 1;
+            while (height >= 0 && blocks.getType(x + height * SIZE) == null) height--;
+            heights[x] = height;
+        }
         for (boolean[] inner : blocksDirty) Arrays.fill(inner, true);
+        Arrays.fill(meshDirty, -1L);
+        neighbours[4] = this;
     }
 
-    public void start() {
-        update(0);
+    public Chunk(Scene world, ChunkData data) {
+        this(data.getPosition(), world, data.getBlocks());
+        // Saved light is a starting point; the chunk is still relit once its neighbours are known
+        System.arraycopy(data.getLights(), 0, lights, 0, lights.length);
     }
 
-    private void adjustBlockLight(int x, int y) {
-        Vector2i[] d = {new Vector2i(0, 1), new Vector2i(1, 0), new Vector2i(0, -1), new Vector2i(-1, 0)};
-
-        int[] lights = new int[4];
-        for (int i = 0; i < 4; i++) {
-            Vector2i chunkOffset = new Vector2i();
-            if (x + d[i].x < 0) chunkOffset.x = -1;
-            else if (x + d[i].x >= SIZE) chunkOffset.x = 1;
-            if (y + d[i].y < 0) chunkOffset.y = -1;
-            else if (y + d[i].y >= SIZE) chunkOffset.y = 1;
-
-            if (chunkOffset.equals(0, 0)) {
-                lights[i] = getBlockLight(x + d[i].x, y + d[i].y);
-            } else {
-                Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
-                if (containingChunk == null) continue;
-                lights[i] = containingChunk.getBlockLight(Math.floorMod(x + d[i].x, SIZE), Math.floorMod(y + d[i].y, SIZE));
-            }
-        }
-
-        int light = Math.max(Arrays.stream(lights).max().getAsInt() - 1, getBlockType(x, y) == null ? 0 : getBlockType(x, y).light());
-
-        if (getBlockLight(x, y) == light) return;
-        blockLights[x][y] = light;
-
-        for (int i = 0; i < 4; i++) {
-            Vector2i chunkOffset = new Vector2i();
-            if (x + d[i].x < 0) chunkOffset.x = -1;
-            else if (x + d[i].x >= SIZE) chunkOffset.x = 1;
-            if (y + d[i].y < 0) chunkOffset.y = -1;
-            else if (y + d[i].y >= SIZE) chunkOffset.y = 1;
-
-            if (chunkOffset.equals(0, 0)) {
-                adjustBlockLight(x + d[i].x, y + d[i].y);
-                isDirty = true;
-            } else {
-                Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
-                if (containingChunk == null) continue;
-                containingChunk.adjustBlockLight(Math.floorMod(x + d[i].x, SIZE), Math.floorMod(y + d[i].y, SIZE));
-                containingChunk.setChunkDirty(true);
-            }
-        }
+    public void start() {
+        update(0);
     }
 
-    private void adjustSkyLight(int x, int y) {
-        Vector2i[] d = {new Vector2i(0, 1), new Vector2i(1, 0), new Vector2i(0, -1), new Vector2i(-1, 0)};
-
-        int[] lights = new int[4];
-        for (int i = 0; i < 4; i++) {
-            Vector2i chunkOffset = new Vector2i();
-            if (x + d[i].x < 0) chunkOffset.x = -1;
-            else if (x + d[i].x >= SIZE) chunkOffset.x = 1;
-            if (y + d[i].y < 0) chunkOffset.y = -1;
-            else if (y + d[i].y >= SIZE) chunkOffset.y = 1;
-
-            if (chunkOffset.equals(0, 0)) {
-                lights[i] = getSkyLight(x + d[i].x, y + d[i].y);
-            } else {
-                Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
-                if (containingChunk == null) continue;
-                lights[i] = containingChunk.getSkyLight(Math.floorMod(x + d[i].x, SIZE), Math.floorMod(y + d[i].y, SIZE));
-            }
-        }
-
-        int light = Math.max(Arrays.stream(lights).max().getAsInt() - 1, getBlockType(x, y) == null && lights[0] == 15 ? 15 : 0);
-
-        if (getSkyLight(x, y) == light) return;
-        skyLights[x][y] = light;
-
-        for (int i = 1; i < 4; i++) {
-            Vector2i chunkOffset = new Vector2i();
-            if (x + d[i].x < 0) chunkOffset.x = -1;
-            else if (x + d[i].x >= SIZE) chunkOffset.x = 1;
-            if (y + d[i].y < 0) chunkOffset.y = -1;
-            else if (y + d[i].y >= SIZE) chunkOffset.y = 1;
-
-            if (chunkOffset.equals(0, 0)) {
-                adjustSkyLight(x + d[i].x, y + d[i].y);
-                isDirty = true;
+    private void spreadDirty(int x, int y) {
+        for (int i = 0; i < 8; i++) {
+            int blockX = x + X_OFFSETS[i], blockY = y + Y_OFFSETS[i];
+            if (blockX >= 0 && blockX < SIZE && blockY >= 0 && blockY < SIZE) {
+                setBlockDirty(blockX, blockY, true);
             } else {
-                Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
+                Chunk containingChunk = getContainingChunk(blockX, blockY);
                 if (containingChunk == null) continue;
-                containingChunk.adjustSkyLight(Math.floorMod(x + d[i].x, SIZE), Math.floorMod(y + d[i].y, SIZE));
-                containingChunk.setChunkDirty(true);
+                containingChunk.setBlockDirty(Math.floorMod(blockX, SIZE), Math.floorMod(blockY, SIZE), true);
             }
         }
     }
 
-    private void spreadDirty(int x, int y) {
-        int[] xOffsets = {-1, 0, 1, -1, 1, -1, 0, 1};
-        int[] yOffsets = {1, 1, 1, 0, 0, -1, -1, -1};
+    private void spreadLightDirty(int x, int y) {
+        // Every block around a cell samples its light for the vertex colors, across chunk borders too
+        for (int offsetY = -1; offsetY <= 1; offsetY++) {
+            for (int offsetX = -1; offsetX <= 1; offsetX++) {
+                int blockX = x + offsetX, blockY = y + offsetY;
+                if (blockX >= 0 && blockX < SIZE && blockY >= 0 && blockY < SIZE) {
+                    markMeshDirty(blockX, blockY);
+                    continue;
+                }
 
-        for (int i = 0; i < 8; i++) {
-            Vector2i chunkOffset = new Vector2i();
-            if (x + xOffsets[i] < 0) chunkOffset.x = -1;
-            else if (x + xOffsets[i] >= SIZE) chunkOffset.x = 1;
-            if (y + yOffsets[i] < 0) chunkOffset.y = -1;
-            else if (y + yOffsets[i] >= SIZE) chunkOffset.y = 1;
-
-            if (chunkOffset.equals(0, 0)) {
-                setBlockDirty(x + xOffsets[i], y + yOffsets[i], true);
-            } else {
-                Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
-                if (containingChunk == null) continue;
-                containingChunk.setBlockDirty(Math.floorMod(x + xOffsets[i], SIZE), Math.floorMod(y + yOffsets[i], SIZE), true);
+                Chunk containingChunk = getContainingChunk(blockX, blockY);
+                if (containingChunk != null) containingChunk.markMeshDirty(Math.floorMod(blockX, SIZE), Math.floorMod(blockY, SIZE));
             }
         }
     }
@@ -182,7 +133,7 @@ public class Chunk {
                     }
 
                     blocksDirty[x][y] = false;
-                    isDirty = true;
+                    markMeshDirty(x, y);
                 }
             }
         }
@@ -196,32 +147,78 @@ public class Chunk {
         return world;
     }
 
+    public Chunk getNeighbour(int dx, int dy) {
+        // dx and dy in -1..1; null if that chunk isn't loaded
+        return neighbours[(dx + 1) + (dy + 1) * 3];
+    }
+
+    public void setNeighbour(int dx, int dy, Chunk chunk) {
+        if (dx == 0 && dy == 0) return;
+        neighbours[(dx + 1) + (dy + 1) * 3] = chunk;
+
+        // Border blocks pick their shape from the blocks across the edge, so they need redoing
+        int minX = dx > 0 ? SIZE - 1 : 0, maxX = dx < 0 ? 0 : SIZE - 1;
+        int minY = dy > 0 ? SIZE - 1 : 0, maxY = dy < 0 ? 0 : SIZE - 1;
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                blocksDirty[x][y] = true;
+            }
+        }
+    }
+
+    public ChunkData getSaveData() {
+        // A copy, a few hundred bytes, so the live chunk can keep changing while it is written
+        return new ChunkData(new Vector2i(position), blocks.copy(), lights.clone());
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
+
+    public void setModified(boolean modified) {
+        this.modified = modified;
+    }
+
+    public BlockStorage getBlockStorage() {
+        return blocks;
+    }
+
+    public boolean isEmpty() {
+        // Only air, nothing worth keeping when unloaded
+        return blocks.isUniform() && blocks.getType(0) == null;
+    }
+
+    private Chunk getContainingChunk(int x, int y) {
+        // The chunk holding local coordinates that may lie outside this one
+        int chunkX = Math.floorDiv(x, SIZE), chunkY = Math.floorDiv(y, SIZE);
+        if (chunkX >= -1 && chunkX <= 1 && chunkY >= -1 && chunkY <= 1) return neighbours[(chunkX + 1) + (chunkY + 1) * 3];
+        return world.getLoadedChunk(position.x + chunkX, position.y + chunkY);
+    }
+
     public boolean isChunkDirty() {
         return isDirty;
     }
 
     public BlockType getBlockType(int x, int y) {
-        Vector2i chunkOffset = new Vector2i();
-        if (x < 0) chunkOffset.x = -1;
-        else if (x >= SIZE) chunkOffset.x = 1;
-        if (y < 0) chunkOffset.y = -1;
-        else if (y >= SIZE) chunkOffset.y = 1;
-
-        if (chunkOffset.equals(0, 0)) {
-            return blockTypes[x][y];
+        if (x >= 0 && x < SIZE && y >= 0 && y < SIZE) {
+            return blocks.getType(x + y * SIZE);
         } else {
-            Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
+            Chunk containingChunk = getContainingChunk(x, y);
             if (containingChunk == null) return null;
             return containingChunk.getBlockType(Math.floorMod(x, SIZE), Math.floorMod(y, SIZE));
         }
     }
 
     public BlockState getBlockState(int x, int y) {
-        BlockState state = blockStates[x][y];
+        BlockState state = blocks.getState(x + y * SIZE);
         if (state == null) return new BlockState();
         return state;
     }
 
+    public int getHeight(int x) {
+        return heights[x];
+    }
+
     public BlockQuad getBlockQuad(int x, int y, int pos) {
         return switch (pos) {
             case 0 -> blockQuads[x * 2][y * 2 + 1];
@@ -237,52 +234,164 @@ public class Chunk {
     }
 
     public int getBlockLight(int x, int y) {
-        Vector2i chunkOffset = new Vector2i();
-        if (x < 0) chunkOffset.x = -1;
-        else if (x >= SIZE) chunkOffset.x = 1;
-        if (y < 0) chunkOffset.y = -1;
-        else if (y >= SIZE) chunkOffset.y = 1;
-
-        if (chunkOffset.equals(0, 0)) {
-            return blockLights[x][y];
+        if (x >= 0 && x < SIZE && y >= 0 && y < SIZE) {
+            return lights[x + y * SIZE] & 0xF;
         } else {
-            Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
+            Chunk containingChunk = getContainingChunk(x, y);
             if (containingChunk == null) return 0;
             return containingChunk.getBlockLight(Math.floorMod(x, SIZE), Math.floorMod(y, SIZE));
         }
     }
 
     public int getSkyLight(int x, int y) {
-        Vector2i chunkOffset = new Vector2i();
-        if (x < 0) chunkOffset.x = -1;
-        else if (x >= SIZE) chunkOffset.x = 1;
-        if (y < 0) chunkOffset.y = -1;
-        else if (y >= SIZE) chunkOffset.y = 1;
-
-        if (chunkOffset.equals(0, 0)) {
-            return skyLights[x][y];
+        if (x >= 0 && x < SIZE && y >= 0 && y < SIZE) {
+            return (lights[x + y * SIZE] >> 4) & 0xF;
         } else {
-            Chunk containingChunk = world.getLoadedChunk(chunkOffset.add(position));
+            Chunk containingChunk = getContainingChunk(x, y);
             if (containingChunk == null) return 15;
             return containingChunk.getSkyLight(Math.floorMod(x, SIZE), Math.floorMod(y, SIZE));
         }
     }
 
     public int getVisualLight(int x, int y) {
+        if (x >= 0 && x < SIZE && y >= 0 && y < SIZE) return visualLight(lights[x + y * SIZE]);
         return Math.max(getBlockLight(x, y), getSkyLight(x, y));
     }
 
+    public void getVisualLightRow(int y, int[] dest) {
+        // Fills dest[0..SIZE + 1] with the visual light of x = -1..SIZE on row y (-1..SIZE)
+        int chunkY = Math.floorDiv(y, SIZE);
+        int row = Math.floorMod(y, SIZE) * SIZE;
+
+        Chunk middle = getNeighbour(0, chunkY);
+        Chunk left = getNeighbour(-1, chunkY);
+        Chunk right = getNeighbour(1, chunkY);
+
+        // Unloaded chunks read as open sky, same as getSkyLight
+        dest[0] = left == null ? 15 : visualLight(left.lights[row + SIZE - 1]);
+        for (int x = 0; x < SIZE; x++) {
+            dest[x + 1] = middle == null ? 15 : visualLight(middle.lights[row + x]);
+        }
+        dest[SIZE + 1] = right == null ? 15 : visualLight(right.lights[row]);
+    }
+
+    private static int visualLight(byte packed) {
+        return Math.max(packed & 0xF, (packed >> 4) & 0xF);
+    }
+
     public void setChunkDirty(boolean dirty) {
+        Arrays.fill(meshDirty, dirty ? -1L : 0);
         isDirty = dirty;
     }
 
+    public void markMeshDirty(int x, int y) {
+        int index = x + y * SIZE;
+        meshDirty[index >>> 6] |= 1L << (index & 63);
+        isDirty = true;
+    }
+
+    public int nextMeshDirty(int fromIndex) {
+        // Index (x + y * SIZE) of the next block whose vertices need rewriting, or -1
+        for (int word = fromIndex >>> 6; word < meshDirty.length; word++) {
+            long bits = meshDirty[word];
+            if (word == fromIndex >>> 6) bits &= -1L << (fromIndex & 63);
+            if (bits != 0) return word * 64 + Long.numberOfTrailingZeros(bits);
+        }
+        return -1;
+    }
+
+    public ChunkSnapshot snapshot() {
+        // Copies everything the mesher reads, so it can run off the main thread while this chunk changes
+        BlockQuad[] quads = new BlockQuad[SIZE * SIZE * 4];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                for (int pos = 0; pos < 4; pos++) {
+                    quads[(x + y * SIZE) * 4 + pos] = getBlockQuad(x, y, pos);
+                }
+            }
+        }
+
+        int[] visualLights = new int[(SIZE + 2) * (SIZE + 2)];
+        int[] row = new int[SIZE + 2];
+        for (int y = -1; y <= SIZE; y++) {
+            getVisualLightRow(y, row);
+            System.arraycopy(row, 0, visualLights, (y + 1) * (SIZE + 2), SIZE + 2);
+        }
+
+        int[] dirtyBlocks = new int[getMeshDirtyCount()];
+        int i = 0;
+        for (int index = nextMeshDirty(0); index != -1; index = nextMeshDirty(index + 1)) {
+            dirtyBlocks[i++] = index;
+        }
+
+        return new ChunkSnapshot(new Vector2i(position), quads, visualLights, dirtyBlocks);
+    }
+
+    public int getMeshDirtyCount() {
+        int count = 0;
+        for (long bits : meshDirty) count += Long.bitCount(bits);
+        return count;
+    }
+
+    void setBlockLight(int x, int y, int light) {
+        int index = x + y * SIZE;
+        lights[index] = (byte) ((lights[index] & 0xF0) | light);
+        spreadLightDirty(x, y);
+    }
+
+    void setSkyLight(int x, int y, int light) {
+        int index = x + y * SIZE;
+        lights[index] = (byte) ((lights[index] & 0x0F) | (light << 4));
+        spreadLightDirty(x, y);
+    }
+
+    byte getPackedLight(int index) {
+        return lights[index];
+    }
+
+    void setPackedLight(int index, byte packed) {
+        // Raw write for the light solvers; callers mark the chunk dirty themselves
+        lights[index] = packed;
+    }
+
+    boolean markLightPending(int x, int y) {
+        int index = x + y * SIZE;
+        lightsPending[index >>> 6] |= 1L << (index & 63);
+        boolean wasQueued = lightQueued;
+        lightQueued = true;
+        return !wasQueued;
+    }
+
+    boolean markAllLightPending() {
+        Arrays.fill(lightsPending, -1L);
+        boolean wasQueued = lightQueued;
+        lightQueued = true;
+        return !wasQueued;
+    }
+
+    long[] getLightsPending() {
+        return lightsPending;
+    }
+
+    void clearLightsPending() {
+        Arrays.fill(lightsPending, 0);
+        lightQueued = false;
+    }
+
     public void setBlock(int x, int y, BlockType type, BlockState state) {
-        blockTypes[x][y] = type;
-        blockStates[x][y] = state;
+        blocks.set(x + y * SIZE, type, state);
+        modified = true;
+        if (type != null) {
+            if (y > heights[x]) heights[x] = y;
+        } else if (y == heights[x]) {
+            int height = y - 1;
+            while (height >= 0 && blocks.getType(x + height * SIZE) == null) height--;
+            heights[x] = height;
+        }
         blocksDirty[x][y] = true;
         spreadDirty(x, y);
-        adjustBlockLight(x, y);
-        adjustSkyLight(x, y);
+
+        world.getLightEngine().markDirty(this, x, y);
     }
 
     public void setBlock(int x, int y, BlockType type) {
@@ -0,0 +1,61 @@
+package block;
+
+import org.joml.Vector2i;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public class ChunkData {
+
+    // Bumped whenever the saved layout below changes
+    private static final byte SAVE_FORMAT = 1;
+
+    // A chunk's saved state, detached from the live chunk so it can be written off the main thread
+    private final Vector2i position;
+    private final BlockStorage blocks;
+    private final byte[] lights;
+
+    public ChunkData(Vector2i position, BlockStorage blocks, byte[] lights) {
+        this.position = position;
+        this.blocks = blocks;
+        this.lights = lights;
+    }
+
+    public Vector2i getPosition() {
+        return position;
+    }
+
+    public BlockStorage getBlocks() {
+        return blocks;
+    }
+
+    public byte[] getLights() {
+        return lights;
+    }
+
+    public boolean isEmpty() {
+        return blocks.isUniform() && blocks.getType(0) == null;
+    }
+
+    public ChunkData copy() {
+        return new ChunkData(new Vector2i(position), blocks.copy(), lights.clone());
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(SAVE_FORMAT);
+        blocks.write(out);
+        out.write(lights);
+    }
+
+    public static ChunkData read(Vector2i position, DataInput in) throws IOException {
+        byte format = in.readByte();
+        if (format != SAVE_FORMAT) throw new IOException("Unsupported chunk format " + format);
+
+        BlockStorage blocks = BlockStorage.read(in);
+        byte[] lights = new byte[Chunk.SIZE * Chunk.SIZE];
+        in.readFully(lights);
+        return new ChunkData(position, blocks, lights);
+    }
+
+}
@@ -0,0 +1,52 @@
+package block;
+
+import org.joml.Vector2i;
+import world.Scene;
+
+public class ChunkLookup {
+
+    // One-entry cache for chunk lookups by block position; flood fills mostly stay within one chunk.
+    // Not thread-safe, each solver or task keeps its own
+    private final Scene world;
+    private final Vector2i lookupPos = new Vector2i();
+    private Chunk lookupChunk;
+    private boolean lookupValid;
+
+    public ChunkLookup(Scene world) {
+        this.world = world;
+    }
+
+    public Chunk chunkAt(int x, int y) {
+        int chunkX = Math.floorDiv(x, Chunk.SIZE), chunkY = Math.floorDiv(y, Chunk.SIZE);
+        if (lookupValid && lookupPos.equals(chunkX, chunkY)) return lookupChunk;
+
+        // Steps off the cached chunk usually land next to it, so follow its neighbour links
+        int dx = chunkX - lookupPos.x, dy = chunkY - lookupPos.y;
+        if (lookupValid && lookupChunk != null && dx >= -1 && dx <= 1 && dy >= -1 && dy <= 1) {
+            lookupChunk = lookupChunk.getNeighbour(dx, dy);
+        } else {
+            lookupChunk = world.getLoadedChunk(chunkX, chunkY);
+        }
+        lookupPos.set(chunkX, chunkY);
+        lookupValid = true;
+        return lookupChunk;
+    }
+
+    public boolean isColumnOpenAbove(int x, int chunkY) {
+        // Heightmaps are only read here, so this is safe next to other tasks' light writes
+        int lx = Math.floorMod(x, Chunk.SIZE);
+        for (int y = (chunkY + 1) * Chunk.SIZE; ; y += Chunk.SIZE) {
+            Chunk chunk = chunkAt(x, y);
+            // Anything above the loaded world counts as open sky
+            if (chunk == null) return true;
+            if (chunk.getHeight(lx) >= 0) return false;
+        }
+    }
+
+    public void reset() {
+        // Drops the cached chunk, e.g. once it may have been unloaded
+        lookupValid = false;
+        lookupChunk = null;
+    }
+
+}
@@ -0,0 +1,40 @@
+package block;
+
+import org.joml.Vector2i;
+
+public class ChunkSnapshot {
+
+    private static final int LIGHT_STRIDE = Chunk.SIZE + 2;
+
+    private final Vector2i position;
+    // 4 quads per block, indexed by (x + y * SIZE) * 4 + pos
+    private final BlockQuad[] quads;
+    // Visual light for x, y = -1..SIZE, so the border of the 8 neighbouring chunks is included
+    private final int[] visualLights;
+    // Blocks (x + y * SIZE) whose vertices need rewriting, in ascending order
+    private final int[] dirtyBlocks;
+
+    public ChunkSnapshot(Vector2i position, BlockQuad[] quads, int[] visualLights, int[] dirtyBlocks) {
+        this.position = position;
+        this.quads = quads;
+        this.visualLights = visualLights;
+        this.dirtyBlocks = dirtyBlocks;
+    }
+
+    public Vector2i getPosition() {
+        return position;
+    }
+
+    public BlockQuad getBlockQuad(int x, int y, int pos) {
+        return quads[(x + y * Chunk.SIZE) * 4 + pos];
+    }
+
+    public int getVisualLight(int x, int y) {
+        return visualLights[(x + 1) + (y + 1) * LIGHT_STRIDE];
+    }
+
+    public int[] getDirtyBlocks() {
+        return dirtyBlocks;
+    }
+
+}
@@ -0,0 +1,272 @@
+package block;
+
+import util.IntQueue;
+import util.LongMap;
+import world.Scene;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+public class LightEngine {
+
+    // Flushes touching at least this many chunks, and half the loaded world, are relit in parallel
+    private static final int PARALLEL_THRESHOLD = 32;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {1, 0, -1, 0};
+
+    private final Scene world;
+    private final ParallelLightSolver parallelSolver;
+
+    // Chunks with cells marked dirty since the last flush(), each listed once
+    private final ArrayList<Chunk> pendingChunks = new ArrayList<>();
+
+    // World-space cells whose block changed since the last propagate(), as x, y pairs
+    private final IntQueue seeds = new IntQueue();
+    // Chunk columns already swept this propagate(), by LongMap.key(x, chunkY)
+    private final LongMap<Boolean> skyColumns = new LongMap<>();
+    // Cells to spread light from, as x, y pairs
+    private final IntQueue addQueue = new IntQueue(1024);
+    // Cells whose light was cleared, as x, y, previous level triples
+    private final IntQueue removeQueue = new IntQueue(1024);
+
+    // BFS steps mostly stay within one chunk
+    private final ChunkLookup lookup;
+
+    public LightEngine(Scene world) {
+        this.world = world;
+        this.parallelSolver = new ParallelLightSolver(world);
+        this.lookup = new ChunkLookup(world);
+    }
+
+    public Scene getWorld() {
+        return world;
+    }
+
+    public void markDirty(Chunk chunk, int x, int y) {
+        if (chunk.markLightPending(x, y)) pendingChunks.add(chunk);
+    }
+
+    public void markDirty(Chunk chunk) {
+        if (chunk.markAllLightPending()) pendingChunks.add(chunk);
+    }
+
+    public void removeChunk(Chunk chunk) {
+        // An unloaded chunk's queued cells would only light a chunk nothing reads anymore
+        if (pendingChunks.remove(chunk)) chunk.clearLightsPending();
+    }
+
+    public void flush() {
+        if (pendingChunks.isEmpty()) return;
+
+        if (pendingChunks.size() >= PARALLEL_THRESHOLD && pendingChunks.size() * 2 >= world.getLoadedChunks().size()) {
+            for (Chunk chunk : pendingChunks) {
+                chunk.clearLightsPending();
+            }
+            pendingChunks.clear();
+            parallelSolver.solve();
+            return;
+        }
+
+        // Highest chunks first, so sky columns settle from the top down
+        pendingChunks.sort(Comparator.comparingInt((Chunk chunk) -> chunk.getPosition().y).reversed());
+
+        for (Chunk chunk : pendingChunks) {
+            long[] pending = chunk.getLightsPending();
+            int originX = chunk.getPosition().x * Chunk.SIZE;
+            int originY = chunk.getPosition().y * Chunk.SIZE;
+
+            for (int word = pending.length - 1; word >= 0; word--) {
+                long bits = pending[word];
+                while (bits != 0) {
+                    // Highest set bit first keeps cells within the chunk ordered top to bottom
+                    int index = word * 64 + 63 - Long.numberOfLeadingZeros(bits);
+                    bits &= ~(1L << (index & 63));
+                    queueCell(originX + index % Chunk.SIZE, originY + index / Chunk.SIZE);
+                }
+            }
+            chunk.clearLightsPending();
+        }
+        pendingChunks.clear();
+
+        propagate();
+    }
+
+    public void queueCell(int x, int y) {
+        seeds.push(x);
+        seeds.push(y);
+    }
+
+    public void propagate() {
+        if (seeds.isEmpty()) return;
+        lookup.reset();
+
+        propagateBlockLight();
+        propagateSkyLight();
+
+        seeds.clear();
+        lookup.reset();
+    }
+
+    private void propagateBlockLight() {
+        for (int i = 0; i < seeds.size(); i += 2) {
+            int x = seeds.get(i), y = seeds.get(i + 1);
+            Chunk chunk = lookup.chunkAt(x, y);
+            if (chunk == null) continue;
+
+            int lx = Math.floorMod(x, Chunk.SIZE), ly = Math.floorMod(y, Chunk.SIZE);
+            int old = chunk.getBlockLight(lx, ly);
+            if (old > 0) {
+                chunk.setBlockLight(lx, ly, 0);
+                removeQueue.push(x);
+                removeQueue.push(y);
+                removeQueue.push(old);
+            }
+        }
+        removeLight(false);
+
+        for (int i = 0; i < seeds.size(); i += 2) {
+            int x = seeds.get(i), y = seeds.get(i + 1);
+            Chunk chunk = lookup.chunkAt(x, y);
+            if (chunk == null) continue;
+
+            int lx = Math.floorMod(x, Chunk.SIZE), ly = Math.floorMod(y, Chunk.SIZE);
+            seedEmission(chunk, x, y, lx, ly);
+            queueNeighbours(x, y);
+        }
+        addLight(false);
+    }
+
+    private void propagateSkyLight() {
+        // One sweep per chunk column, however many of its cells changed; a full relight of a chunk
+        // sweeps each of its columns once rather than once per cell
+        for (int i = 0; i < seeds.size(); i += 2) {
+            int x = seeds.get(i), y = seeds.get(i + 1);
+            if (skyColumns.put(LongMap.key(x, Math.floorDiv(y, Chunk.SIZE)), Boolean.TRUE) == null) updateSkyColumn(x, y);
+        }
+        skyColumns.clear();
+        removeLight(true);
+
+        for (int i = 0; i < seeds.size(); i += 2) {
+            queueNeighbours(seeds.get(i), seeds.get(i + 1));
+        }
+        addLight(true);
+    }
+
+    private void updateSkyColumn(int x, int y) {
+        // Everything above a column's topmost block is a sky source (level 15) if the column is open
+        // above this chunk too, so the heightmap settles a whole chunk column in one sweep. Only
+        // flips that reach the bottom of the chunk carry on into the chunk below.
+        int lx = Math.floorMod(x, Chunk.SIZE);
+        int chunkY = Math.floorDiv(y, Chunk.SIZE);
+        Chunk chunk = lookup.chunkAt(x, y);
+        if (chunk == null) return;
+
+        boolean aboveOpen = lookup.isColumnOpenAbove(x, chunkY);
+        while (true) {
+            int height = aboveOpen ? chunk.getHeight(lx) : Chunk.SIZE - 1;
+            for (int ly = Chunk.SIZE - 1; ly >= 0; ly--) {
+                boolean open = ly > height;
+                int old = chunk.getSkyLight(lx, ly);
+
+                if (open && old != 15) {
+                    chunk.setSkyLight(lx, ly, 15);
+                    addQueue.push(x);
+                    addQueue.push(chunkY * Chunk.SIZE + ly);
+                } else if (!open && old == 15) {
+                    chunk.setSkyLight(lx, ly, 0);
+                    removeQueue.push(x);
+                    removeQueue.push(chunkY * Chunk.SIZE + ly);
+                    removeQueue.push(15);
+                }
+            }
+
+            aboveOpen = aboveOpen && chunk.getHeight(lx) == -1;
+            chunkY--;
+            chunk = lookup.chunkAt(x, chunkY * Chunk.SIZE);
+            if (chunk == null) return;
+
+            // The column below only needs work if its top cell disagrees with what is above it now
+            boolean topIsAir = chunk.getBlockType(lx, Chunk.SIZE - 1) == null;
+            boolean topWasOpen = topIsAir && chunk.getSkyLight(lx, Chunk.SIZE - 1) == 15;
+            if (topWasOpen == (aboveOpen && topIsAir)) return;
+        }
+    }
+
+    private void seedEmission(Chunk chunk, int x, int y, int lx, int ly) {
+        BlockType type = chunk.getBlockType(lx, ly);
+        int emission = type == null ? 0 : type.light();
+        if (emission > chunk.getBlockLight(lx, ly)) {
+            chunk.setBlockLight(lx, ly, emission);
+            addQueue.push(x);
+            addQueue.push(y);
+        }
+    }
+
+    private void queueNeighbours(int x, int y) {
+        for (int d = 0; d < 4; d++) {
+            addQueue.push(x + DX[d]);
+            addQueue.push(y + DY[d]);
+        }
+    }
+
+    private void removeLight(boolean sky) {
+        while (!removeQueue.isEmpty()) {
+            int x = removeQueue.pop(), y = removeQueue.pop(), level = removeQueue.pop();
+
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                Chunk chunk = lookup.chunkAt(nx, ny);
+                if (chunk == null) continue;
+
+                int lx = Math.floorMod(nx, Chunk.SIZE), ly = Math.floorMod(ny, Chunk.SIZE);
+                int neighbour = sky ? chunk.getSkyLight(lx, ly) : chunk.getBlockLight(lx, ly);
+                if (neighbour == 0) continue;
+
+                if (neighbour < level) {
+                    // Lit by the removed cell, clear it and keep unwinding
+                    if (sky) chunk.setSkyLight(lx, ly, 0);
+                    else chunk.setBlockLight(lx, ly, 0);
+                    removeQueue.push(nx);
+                    removeQueue.push(ny);
+                    removeQueue.push(neighbour);
+                    if (!sky) seedEmission(chunk, nx, ny, lx, ly);
+                } else {
+                    // Lit from elsewhere, let it flow back into the cleared area
+                    addQueue.push(nx);
+                    addQueue.push(ny);
+                }
+            }
+        }
+    }
+
+    private void addLight(boolean sky) {
+        while (!addQueue.isEmpty()) {
+            int x = addQueue.pop(), y = addQueue.pop();
+            Chunk chunk = lookup.chunkAt(x, y);
+            if (chunk == null) continue;
+
+            int lx = Math.floorMod(x, Chunk.SIZE), ly = Math.floorMod(y, Chunk.SIZE);
+            int level = (sky ? chunk.getSkyLight(lx, ly) : chunk.getBlockLight(lx, ly)) - 1;
+            if (level <= 0) continue;
+
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d], ny = y + DY[d];
+                Chunk neighbour = lookup.chunkAt(nx, ny);
+                if (neighbour == null) continue;
+
+                int nlx = Math.floorMod(nx, Chunk.SIZE), nly = Math.floorMod(ny, Chunk.SIZE);
+                if (sky) {
+                    if (neighbour.getSkyLight(nlx, nly) >= level) continue;
+                    neighbour.setSkyLight(nlx, nly, level);
+                } else {
+                    if (neighbour.getBlockLight(nlx, nly) >= level) continue;
+                    neighbour.setBlockLight(nlx, nly, level);
+                }
+                addQueue.push(nx);
+                addQueue.push(ny);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+package block;
+
+import org.joml.Vector2i;
+import util.IntQueue;
+import world.Scene;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class ParallelLightSolver {
+
+    // Regions are REGION_SIZE x REGION_SIZE chunks, each solved by one task
+    public static final int REGION_SIZE = 4;
+
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {1, 0, -1, 0};
+
+    private final Scene world;
+    private final ForkJoinPool pool;
+
+    public ParallelLightSolver(Scene world) {
+        this(world, ForkJoinPool.commonPool());
+    }
+
+    public ParallelLightSolver(Scene world, ForkJoinPool pool) {
+        this.world = world;
+        this.pool = pool;
+    }
+
+    public void solve() {
+        // Relights every loaded chunk from scratch. Light only ever spreads from sources with a loss of 1
+        // per step, so the fixed point is unique and matches what LightEngine arrives at incrementally.
+        HashMap<Vector2i, Region> regionMap = new HashMap<>();
+        for (Chunk chunk : world.getLoadedChunks()) {
+            Vector2i regionPos = new Vector2i(Math.floorDiv(chunk.getPosition().x, REGION_SIZE), Math.floorDiv(chunk.getPosition().y, REGION_SIZE));
+            regionMap.computeIfAbsent(regionPos, Region::new).chunks.add(chunk);
+        }
+        List<Region> regions = new ArrayList<>(regionMap.values());
+
+        // Phase 1: every region settles on its own, treating other regions as dark
+        runAll(regions, region -> {
+            region.solveLocal();
+            return true;
+        });
+
+        // Phase 2: read light across region borders, then let it spread, until no region changes
+        boolean changed = true;
+        while (changed) {
+            runAll(regions, region -> {
+                region.collectBorder();
+                return true;
+            });
+            changed = false;
+            for (boolean regionChanged : runAll(regions, Region::applyBorder)) {
+                changed |= regionChanged;
+            }
+        }
+
+        for (Chunk chunk : world.getLoadedChunks()) {
+            chunk.setChunkDirty(true);
+        }
+    }
+
+    private List<Boolean> runAll(List<Region> regions, RegionTask task) {
+        List<Callable<Boolean>> callables = new ArrayList<>(regions.size());
+        for (Region region : regions) {
+            callables.add(() -> task.run(region));
+        }
+
+        List<Boolean> results = new ArrayList<>(regions.size());
+        try {
+            for (Future<Boolean> future : pool.invokeAll(callables)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Light solver task failed", e);
+        }
+        return results;
+    }
+
+    private interface RegionTask {
+        boolean run(Region region);
+    }
+
+    private class Region {
+
+        private final Vector2i position;
+        private final ArrayList<Chunk> chunks = new ArrayList<>();
+        // Cells to spread light from, as x, y pairs
+        private final IntQueue queue = new IntQueue(1024);
+        // Light offered by neighbouring regions, as x, y, block, sky quads
+        private final IntQueue incoming = new IntQueue();
+
+        // Each task looks chunks up through its own cache
+        private final ChunkLookup lookup = new ChunkLookup(world);
+
+        private Region(Vector2i position) {
+            this.position = position;
+        }
+
+        private void solveLocal() {
+            for (Chunk chunk : chunks) {
+                int originX = chunk.getPosition().x * Chunk.SIZE;
+                int originY = chunk.getPosition().y * Chunk.SIZE;
+
+                for (int x = 0; x < Chunk.SIZE; x++) {
+                    int skyHeight = lookup.isColumnOpenAbove(originX + x, chunk.getPosition().y) ? chunk.getHeight(x) : Chunk.SIZE - 1;
+
+                    for (int y = 0; y < Chunk.SIZE; y++) {
+                        BlockType type = chunk.getBlockType(x, y);
+                        int block = type == null ? 0 : type.light();
+                        int sky = y > skyHeight ? 15 : 0;
+                        chunk.setPackedLight(x + y * Chunk.SIZE, (byte) (block | (sky << 4)));
+                        if (block > 1 || sky > 1) {
+                            queue.push(originX + x);
+                            queue.push(originY + y);
+                        }
+                    }
+                }
+            }
+            spread();
+        }
+
+        private void collectBorder() {
+            incoming.clear();
+            for (Chunk chunk : chunks) {
+                int originX = chunk.getPosition().x * Chunk.SIZE;
+                int originY = chunk.getPosition().y * Chunk.SIZE;
+
+                for (int i = 0; i < Chunk.SIZE; i++) {
+                    collectFrom(originX + i, originY + Chunk.SIZE - 1, 0);
+                    collectFrom(originX + Chunk.SIZE - 1, originY + i, 1);
+                    collectFrom(originX + i, originY, 2);
+                    collectFrom(originX, originY + i, 3);
+                }
+            }
+        }
+
+        private void collectFrom(int x, int y, int d) {
+            int nx = x + DX[d], ny = y + DY[d];
+            Chunk neighbour = lookup.chunkAt(nx, ny);
+            if (neighbour == null || contains(neighbour)) return;
+
+            byte packed = neighbour.getPackedLight(Math.floorMod(nx, Chunk.SIZE) + Math.floorMod(ny, Chunk.SIZE) * Chunk.SIZE);
+            int block = (packed & 0xF) - 1, sky = ((packed >> 4) & 0xF) - 1;
+            if (block <= 0 && sky <= 0) return;
+
+            incoming.push(x);
+            incoming.push(y);
+            incoming.push(block);
+            incoming.push(sky);
+        }
+
+        private boolean applyBorder() {
+            boolean changed = false;
+            while (!incoming.isEmpty()) {
+                int x = incoming.pop(), y = incoming.pop(), block = incoming.pop(), sky = incoming.pop();
+                Chunk chunk = lookup.chunkAt(x, y);
+                if (raise(chunk, x, y, block, sky)) changed = true;
+            }
+            spread();
+            return changed;
+        }
+
+        private void spread() {
+            // Both channels share the queue; a cell is revisited whenever either of its levels rises
+            while (!queue.isEmpty()) {
+                int x = queue.pop(), y = queue.pop();
+                Chunk chunk = lookup.chunkAt(x, y);
+                byte packed = chunk.getPackedLight(Math.floorMod(x, Chunk.SIZE) + Math.floorMod(y, Chunk.SIZE) * Chunk.SIZE);
+                int block = (packed & 0xF) - 1, sky = ((packed >> 4) & 0xF) - 1;
+                if (block <= 0 && sky <= 0) continue;
+
+                for (int d = 0; d < 4; d++) {
+                    int nx = x + DX[d], ny = y + DY[d];
+                    Chunk neighbour = lookup.chunkAt(nx, ny);
+                    if (neighbour == null || !contains(neighbour)) continue;
+                    raise(neighbour, nx, ny, block, sky);
+                }
+            }
+        }
+
+        private boolean raise(Chunk chunk, int x, int y, int block, int sky) {
+            int index = Math.floorMod(x, Chunk.SIZE) + Math.floorMod(y, Chunk.SIZE) * Chunk.SIZE;
+            byte packed = chunk.getPackedLight(index);
+            int oldBlock = packed & 0xF, oldSky = (packed >> 4) & 0xF;
+            if (block <= oldBlock && sky <= oldSky) return false;
+
+            chunk.setPackedLight(index, (byte) (Math.max(block, oldBlock) | (Math.max(sky, oldSky) << 4)));
+            queue.push(x);
+            queue.push(y);
+            return true;
+        }
+
+        private boolean contains(Chunk chunk) {
+            return Math.floorDiv(chunk.getPosition().x, REGION_SIZE) == position.x
+                    && Math.floorDiv(chunk.getPosition().y, REGION_SIZE) == position.y;
+        }
+
+    }
+
+}
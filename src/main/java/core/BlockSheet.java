@@ -160,7 +160,13 @@ public class BlockSheet {
                     }
                 }
 
-                Image quadImage = new Image(new Vector2i(blockSize / 2, blockSize / 2), new Vector2i[]{new Vector2i((int) leftX, (int) bottomY)});
+                // Animated sheets give the quad one position per frame, offset like the sheet's own frames
+                Vector2i[] framePos = new Vector2i[image.getPos().length];
+                for (int frame = 0; frame < framePos.length; frame++) {
+                    int frameOffset = image.getPos()[frame].y - image.getPos()[0].y;
+                    framePos[frame] = new Vector2i((int) leftX, (int) bottomY + frameOffset);
+                }
+                Image quadImage = new Image(new Vector2i(blockSize / 2, blockSize / 2), framePos);
 
                 if (this.format == 0) {
                     BlockQuad.add(new BlockQuad(type, quadImage, blockSize, j, format));
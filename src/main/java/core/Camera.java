@@ -5,9 +5,12 @@ import util.Settings;
 
 public class Camera {
     private Matrix4f projectionMatrix, viewMatrix, inverseProjection, inverseView;
+    private final Matrix4f worldProjection = new Matrix4f(), staticProjection = new Matrix4f();
     public Vector2f position;
     private Vector2f projectionSize = new Vector2f(32 * 40, 32 * 21);
     private float zoom = 0.4f;
+    // Bumped whenever the matrices are recomputed, so uploads can be skipped when nothing moved
+    private int version;
 
     public Camera(Vector2f position) {
         this.position = position;
@@ -19,19 +22,28 @@ public class Camera {
     }
 
     public void adjustProjection() {
+        // Called once per update; everything drawn this frame reads the matrices computed here
         projectionMatrix.identity();
         projectionMatrix.ortho(-projectionSize.x * zoom / 2, projectionSize.x * zoom / 2, -projectionSize.y * zoom / 2, projectionSize.y * zoom / 2, 0.0f, 100.0f);
         projectionMatrix.invert(inverseProjection);
-    }
-
-    public Matrix4f getViewMatrix() {
-        Vector3f cameraFront = new Vector3f(position.x, position.y, -1);
-        Vector3f cameraUp = new Vector3f(0, 1, 0);
 
-        viewMatrix.identity();
-        viewMatrix.lookAt(new Vector3f(position.x, position.y, 20), cameraFront, cameraUp);
+        viewMatrix.setLookAt(position.x, position.y, 20, position.x, position.y, -1, 0, 1, 0);
         viewMatrix.invert(inverseView);
 
+        projectionMatrix.mul(viewMatrix, worldProjection);
+
+        float xOffset = projectionSize.x / Settings.GUI_SCALE;
+        float yOffset = projectionSize.y / Settings.GUI_SCALE;
+        staticProjection.setOrtho(-xOffset, xOffset, -yOffset, yOffset, 0.0f, 100.0f);
+
+        version++;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Matrix4f getViewMatrix() {
         return viewMatrix;
     }
 
@@ -44,14 +56,11 @@ public class Camera {
     }
 
     public Matrix4f getWorldProjection() {
-        return projectionMatrix.mul(viewMatrix, new Matrix4f());
+        return worldProjection;
     }
 
     public Matrix4f getStaticProjection() {
-        Matrix4f staticProjection = new Matrix4f();
-        float xOffset = projectionSize.x / Settings.GUI_SCALE;
-        float yOffset = projectionSize.y / Settings.GUI_SCALE;
-        return staticProjection.ortho(-xOffset, xOffset, -yOffset, yOffset, 0.0f, 100.0f);
+        return staticProjection;
     }
 
     public Matrix4f getInverseView() {
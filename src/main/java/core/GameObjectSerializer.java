@@ -12,7 +12,8 @@ public class GameObjectSerializer implements JsonDeserializer<GameObject> {
     public GameObject deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
         JsonObject jsonObject = json.getAsJsonObject();
         String name = jsonObject.get("name").getAsString();
-        JsonArray components = jsonObject.getAsJsonArray("component");
+        // Saved under the field's name, "components"
+        JsonArray components = jsonObject.getAsJsonArray("components");
 
         GameObject go = new GameObject(name);
         for (JsonElement e : components) {
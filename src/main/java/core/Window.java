@@ -207,6 +207,7 @@ public class Window {
         }
 
         currentWorld.save();
+        currentWorld.destroy();
     }
 
     public static Scene getScene() {
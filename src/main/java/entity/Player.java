@@ -2,12 +2,14 @@ package entity;
 
 import core.KeyListener;
 import core.MouseListener;
+import core.Window;
 import org.joml.Vector4i;
 import util.EntityAppearance;
 
 import org.joml.Vector2d;
 import org.joml.Vector2i;
 import util.AssetPool;
+import util.Settings;
 
 import static org.lwjgl.glfw.GLFW.*;
 
@@ -89,7 +91,8 @@ public class Player extends Entity {
             if (!isColliding()) return;
         }
 
-        collisionBox.setPosition(-collisionBox.w / 2, 0);
+        int surfaceY = Window.getScene().getSurfaceY(0);
+        collisionBox.setPosition(-collisionBox.w / 2, surfaceY == Integer.MIN_VALUE ? 0 : (surfaceY + 1) * Settings.BLOCK_SIZE);
         while (isColliding()) {
             collisionBox.y += 16;
         }
@@ -0,0 +1,51 @@
+package renderer;
+
+import core.Camera;
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.glBindBufferBase;
+import static org.lwjgl.opengl.GL31.GL_UNIFORM_BUFFER;
+
+public class CameraUniforms {
+
+    // Shaders declare "layout (std140) uniform Camera { mat4 uWorldProj; mat4 uStaticProj; };"
+    public static final String BLOCK_NAME = "Camera";
+    public static final int BINDING = 0;
+
+    private static final FloatBuffer data = BufferUtils.createFloatBuffer(2 * 16);
+    private static int uboID = -1;
+
+    private static Camera lastCamera;
+    private static int lastVersion;
+
+    public static void update(Camera camera) {
+        if (uboID == -1) {
+            uboID = glGenBuffers();
+            glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+            glBufferData(GL_UNIFORM_BUFFER, (long) data.capacity() * Float.BYTES, GL_DYNAMIC_DRAW);
+            glBindBufferBase(GL_UNIFORM_BUFFER, BINDING, uboID);
+        }
+
+        // The camera only changes once per update, however many passes and batches draw with it
+        if (camera == lastCamera && camera.getVersion() == lastVersion) return;
+        lastCamera = camera;
+        lastVersion = camera.getVersion();
+
+        camera.getWorldProjection().get(0, data);
+        camera.getStaticProjection().get(16, data);
+        glBindBuffer(GL_UNIFORM_BUFFER, uboID);
+        glBufferSubData(GL_UNIFORM_BUFFER, 0, data);
+    }
+
+    public static void delete() {
+        // The next update() creates the buffer again
+        if (uboID == -1) return;
+        glDeleteBuffers(uboID);
+        uboID = -1;
+        lastCamera = null;
+    }
+
+}
@@ -0,0 +1,220 @@
+package renderer;
+
+import block.Chunk;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import util.AssetPool;
+import util.Image;
+import util.Settings;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.glfw.GLFW.glfwGetTime;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
+import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.opengl.GL32.glDrawElementsBaseVertex;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+import static org.lwjgl.opengl.GL40.GL_DRAW_INDIRECT_BUFFER;
+import static org.lwjgl.opengl.GL43.glMultiDrawElementsIndirect;
+
+public class ChunkBatch {
+
+    // Every chunk owns a fixed slot of the shared vertex buffer
+    public static final int VERTICES_PER_CHUNK = Chunk.SIZE * Chunk.SIZE * 4 * 4;
+    public static final int BYTES_PER_CHUNK = Chunk.SIZE * Chunk.SIZE * ChunkMesher.BYTES_PER_BLOCK;
+    // DrawElementsIndirectCommand: count, instanceCount, firstIndex, baseVertex, baseInstance
+    private static final int COMMAND_INTS = 5;
+
+    private boolean indirect;
+    private int vaoID, vboID, eboID, originVboID, commandBufferID;
+    private int capacity;
+    private int slotCount;
+    // Slots handed back by freeSlot(), reused before new ones are taken
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    private FloatBuffer origins;
+    private IntBuffer commands;
+
+    public ChunkBatch(int initialSlots) {
+        capacity = Math.max(1, initialSlots);
+    }
+
+    public void start() {
+        // One multi-draw per frame needs GL 4.3 (or the ARB extensions); GL 3.3 draws chunk by chunk instead
+        GLCapabilities caps = GL.getCapabilities();
+        indirect = Settings.ENABLE_INDIRECT_DRAW && (caps.OpenGL43 || (caps.GL_ARB_multi_draw_indirect && caps.GL_ARB_base_instance));
+
+        vaoID = glGenVertexArrays();
+        GLState.bindVertexArray(vaoID);
+
+        // Shared vertex buffer, one slot per chunk
+        vboID = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, vboID);
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * BYTES_PER_CHUNK, GL_DYNAMIC_DRAW);
+        VertexFormat.enableChunkAttributes();
+
+        // One chunk's worth of indices, offset into each slot with a base vertex
+        eboID = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, generateIndices(), GL_STATIC_DRAW);
+
+        // Shader: layout (location = 6) in vec2 aOrigin; one value per draw, picked by its base instance
+        originVboID = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, originVboID);
+        glVertexAttribPointer(6, 2, GL_FLOAT, false, 2 * Float.BYTES, 0);
+        glVertexAttribDivisor(6, 1);
+        // The fallback path feeds the origin as a constant attribute value instead
+        if (indirect) glEnableVertexAttribArray(6);
+
+        if (indirect) commandBufferID = glGenBuffers();
+        allocateDrawBuffers();
+    }
+
+    public int allocateSlot() {
+        if (freeCount > 0) return freeSlots[--freeCount];
+        if (slotCount == capacity) grow();
+        return slotCount++;
+    }
+
+    public void freeSlot(int slot) {
+        // The slot's old vertices stay in the buffer; nothing draws them until it is handed out and remeshed
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    public int getSlotCount() {
+        return slotCount - freeCount;
+    }
+
+    public long getGpuBytes() {
+        // Vertex slots, the shared index buffer, and the per-draw origins and commands
+        long bytes = (long) capacity * BYTES_PER_CHUNK + (long) Chunk.SIZE * Chunk.SIZE * 4 * 6 * Integer.BYTES;
+        if (indirect) bytes += (long) capacity * (2 * Float.BYTES + COMMAND_INTS * Integer.BYTES);
+        return bytes;
+    }
+
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    public void upload(int slot, int offset, ByteBuffer data) {
+        glBindBuffer(GL_ARRAY_BUFFER, vboID);
+        glBufferSubData(GL_ARRAY_BUFFER, (long) slot * BYTES_PER_CHUNK + offset, data);
+    }
+
+    public void render(List<ChunkRenderer> visible) {
+        if (visible.isEmpty()) return;
+
+        Shader shader = Renderer.getBoundShader();
+        shader.use();
+        shader.uploadFloat("uPosScale", (float) Settings.BLOCK_SIZE / VertexFormat.POSITION_SCALE);
+        shader.uploadFloat("uTime", (float) glfwGetTime());
+        shader.uploadFloat("uFrameTime", Image.FRAME_TIME);
+
+        Texture tex = AssetPool.getBlockTexture();
+        GLState.activeTexture(tex.getID());
+        tex.bind();
+
+        shader.uploadTexture("uTexture", tex.getID());
+
+        // Attribute arrays stay enabled in the vertex array, set up once in start()
+        GLState.bindVertexArray(vaoID);
+
+        if (indirect) {
+            origins.clear();
+            commands.clear();
+            int drawIndex = 0;
+            for (ChunkRenderer chunk : visible) {
+                float chunkSize = Chunk.SIZE * Settings.BLOCK_SIZE;
+                origins.put(chunk.getChunk().getPosition().x * chunkSize).put(chunk.getChunk().getPosition().y * chunkSize);
+                commands.put(chunk.getDrawBlocks() * 4 * 6).put(1).put(0).put(chunk.getSlot() * VERTICES_PER_CHUNK).put(drawIndex++);
+            }
+            origins.flip();
+            commands.flip();
+
+            glBindBuffer(GL_ARRAY_BUFFER, originVboID);
+            glBufferData(GL_ARRAY_BUFFER, origins, GL_STREAM_DRAW);
+
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, commandBufferID);
+            glBufferData(GL_DRAW_INDIRECT_BUFFER, commands, GL_STREAM_DRAW);
+            glMultiDrawElementsIndirect(GL_TRIANGLES, GL_UNSIGNED_INT, 0, visible.size(), 0);
+            glBindBuffer(GL_DRAW_INDIRECT_BUFFER, 0);
+        } else {
+            // The origin comes from the constant attribute value while its array is disabled
+            for (ChunkRenderer chunk : visible) {
+                float chunkSize = Chunk.SIZE * Settings.BLOCK_SIZE;
+                glVertexAttrib2f(6, chunk.getChunk().getPosition().x * chunkSize, chunk.getChunk().getPosition().y * chunkSize);
+                glDrawElementsBaseVertex(GL_TRIANGLES, chunk.getDrawBlocks() * 4 * 6, GL_UNSIGNED_INT, 0, chunk.getSlot() * VERTICES_PER_CHUNK);
+            }
+        }
+
+    }
+
+    public void delete() {
+        glDeleteVertexArrays(vaoID);
+        glDeleteBuffers(vboID);
+        glDeleteBuffers(eboID);
+        glDeleteBuffers(originVboID);
+        if (indirect) glDeleteBuffers(commandBufferID);
+    }
+
+    private void grow() {
+        int newCapacity = capacity * 2;
+
+        // Copy every slot over on the GPU, then point the vertex array at the new buffer
+        int newVboID = glGenBuffers();
+        glBindBuffer(GL_COPY_WRITE_BUFFER, newVboID);
+        glBufferData(GL_COPY_WRITE_BUFFER, (long) newCapacity * BYTES_PER_CHUNK, GL_DYNAMIC_DRAW);
+        glBindBuffer(GL_COPY_READ_BUFFER, vboID);
+        glCopyBufferSubData(GL_COPY_READ_BUFFER, GL_COPY_WRITE_BUFFER, 0, 0, (long) capacity * BYTES_PER_CHUNK);
+        glDeleteBuffers(vboID);
+        vboID = newVboID;
+
+        GLState.bindVertexArray(vaoID);
+        glBindBuffer(GL_ARRAY_BUFFER, vboID);
+        VertexFormat.enableChunkAttributes();
+
+        capacity = newCapacity;
+        allocateDrawBuffers();
+    }
+
+    private void allocateDrawBuffers() {
+        origins = BufferUtils.createFloatBuffer(capacity * 2);
+        if (indirect) commands = BufferUtils.createIntBuffer(capacity * COMMAND_INTS);
+    }
+
+    private int[] generateIndices() {
+        // 6 indices per quad (3 indices per triangle, 2 triangles per quad)
+        int[] elements = new int[Chunk.SIZE * Chunk.SIZE * 4 * 6];
+        for (int i = 0; i < Chunk.SIZE * Chunk.SIZE * 4; i++) {
+            loadElementIndices(elements, i);
+        }
+        return elements;
+    }
+
+    private void loadElementIndices(int[] elements, int index) {
+        int offsetArrayIndex = 6 * index;
+        int offset = 4 * index;
+
+        // 3, 2, 0, 0, 2, 1
+        // Triangle 1
+        elements[offsetArrayIndex]     = offset + 3;
+        elements[offsetArrayIndex + 1] = offset + 2;
+        elements[offsetArrayIndex + 2] = offset;
+
+        // Triangle 2
+        elements[offsetArrayIndex + 3] = offset;
+        elements[offsetArrayIndex + 4] = offset + 2;
+        elements[offsetArrayIndex + 5] = offset + 1;
+    }
+
+}
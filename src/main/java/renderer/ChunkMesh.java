@@ -0,0 +1,30 @@
+package renderer;
+
+public class ChunkMesh {
+
+    // Blocks (x + y * SIZE) this mesh covers, in ascending order
+    private final int[] blocks;
+    // ChunkMesher.BYTES_PER_BLOCK bytes per entry in blocks
+    private final byte[] vertices;
+    // Non-empty quads (0-4) per entry in blocks
+    private final byte[] quadCounts;
+
+    public ChunkMesh(int[] blocks, byte[] vertices, byte[] quadCounts) {
+        this.blocks = blocks;
+        this.vertices = vertices;
+        this.quadCounts = quadCounts;
+    }
+
+    public int[] getBlocks() {
+        return blocks;
+    }
+
+    public byte[] getVertices() {
+        return vertices;
+    }
+
+    public byte[] getQuadCounts() {
+        return quadCounts;
+    }
+
+}
@@ -0,0 +1,170 @@
+package renderer;
+
+import block.BlockQuad;
+import block.Chunk;
+import block.ChunkSnapshot;
+import org.joml.Vector2f;
+import util.Settings;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ChunkMesher {
+
+    // 4 quads per block, 4 vertices per quad
+    public static final int BYTES_PER_BLOCK = 4 * 4 * VertexFormat.CHUNK_VERTEX_BYTES;
+
+    // Quad corners in position units; quads overlap their neighbours by one unit so no seams show
+    private static final int SEAM = 1;
+    private static final int LOW = -SEAM;
+    private static final int MID_LOW = VertexFormat.POSITION_SCALE / 2 - SEAM;
+    private static final int MID_HIGH = VertexFormat.POSITION_SCALE / 2 + SEAM;
+    private static final int HIGH = VertexFormat.POSITION_SCALE + SEAM;
+    // x, y for each of the 4 vertices, per quad position
+    private static final int[][] QUAD_OFFSETS = {
+            {MID_HIGH, HIGH, MID_HIGH, MID_LOW, LOW, MID_LOW, LOW, HIGH},
+            {HIGH, HIGH, HIGH, MID_LOW, MID_LOW, MID_LOW, MID_LOW, HIGH},
+            {MID_HIGH, MID_HIGH, MID_HIGH, LOW, LOW, LOW, LOW, MID_HIGH},
+            {HIGH, MID_HIGH, HIGH, LOW, MID_LOW, LOW, MID_LOW, MID_HIGH},
+    };
+
+    private final ExecutorService workers;
+    private int uploadsLeft;
+
+    public ChunkMesher(int threads) {
+        workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "chunk-mesher");
+            // Never keep the game alive just for meshing
+            thread.setDaemon(true);
+            return thread;
+        });
+        uploadsLeft = Settings.CHUNK_UPLOADS_PER_FRAME;
+    }
+
+    public Future<ChunkMesh> submit(ChunkSnapshot snapshot) {
+        return workers.submit(() -> buildMesh(snapshot));
+    }
+
+    public void beginFrame() {
+        uploadsLeft = Settings.CHUNK_UPLOADS_PER_FRAME;
+    }
+
+    public boolean tryUpload() {
+        // Spreads finished meshes over several frames when many chunks finish at once
+        if (uploadsLeft <= 0) return false;
+        uploadsLeft--;
+        return true;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public static ChunkMesh buildMesh(ChunkSnapshot snapshot) {
+        int[] blocks = snapshot.getDirtyBlocks();
+        byte[] vertices = new byte[blocks.length * BYTES_PER_BLOCK];
+        byte[] quadCounts = new byte[blocks.length];
+        ByteBuffer writer = ByteBuffer.wrap(vertices).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < blocks.length; i++) {
+            quadCounts[i] = (byte) meshBlock(snapshot, blocks[i] % Chunk.SIZE, blocks[i] / Chunk.SIZE, writer, i * BYTES_PER_BLOCK);
+        }
+        return new ChunkMesh(blocks, vertices, quadCounts);
+    }
+
+    private static int meshBlock(ChunkSnapshot snapshot, int x, int y, ByteBuffer vertices, int offset) {
+        // Returns the number of non-empty quads written
+        float[] blockLights = new float[9];
+        int i = 0;
+        for (int offsetY = 1; offsetY >= -1; offsetY--) {
+            for (int offsetX = -1; offsetX <= 1; offsetX++) {
+                blockLights[i++] = (snapshot.getVisualLight(x + offsetX, y + offsetY) + 3) / 18f;
+            }
+        }
+        float[] cornerLights = {
+                (blockLights[0] + blockLights[1] + blockLights[3] + blockLights[4]) / 4,
+                (blockLights[1] + blockLights[2] + blockLights[4] + blockLights[5]) / 4,
+                (blockLights[3] + blockLights[4] + blockLights[6] + blockLights[7]) / 4,
+                (blockLights[4] + blockLights[5] + blockLights[7] + blockLights[8]) / 4,
+        };
+
+        float[] vertexLights = new float[4];
+        int quadCount = 0;
+
+        for (int p = 0; p < 4; p++) {
+            BlockQuad quad = snapshot.getBlockQuad(x, y, p);
+            if (quad == null) {
+                for (int b = 0; b < 4 * VertexFormat.CHUNK_VERTEX_BYTES; b++) {
+                    vertices.put(offset + b, (byte) 0);
+                }
+                offset += 4 * VertexFormat.CHUNK_VERTEX_BYTES;
+                continue;
+            }
+            quadCount++;
+
+            // The shader steps through animation frames, so only the first one is baked in
+            Vector2f[] texCoords = quad.getTexCoords(0);
+            int frameCount = quad.getFrameCount();
+            int frameStride = quad.getFrameStride();
+            if (frameCount > 255 || frameStride < Byte.MIN_VALUE || frameStride > Byte.MAX_VALUE) {
+                // Doesn't fit the vertex format, leave it still
+                frameCount = 1;
+                frameStride = 0;
+            }
+
+            // Get the vertex lights based on p
+            switch (p) {
+                case 0 -> {
+                    vertexLights[0] = (cornerLights[0] + cornerLights[1]) / 2;
+                    vertexLights[1] = blockLights[4];
+                    vertexLights[2] = (cornerLights[0] + cornerLights[2]) / 2;
+                    vertexLights[3] = cornerLights[0];
+                }
+                case 1 -> {
+                    vertexLights[0] = cornerLights[1];
+                    vertexLights[1] = (cornerLights[1] + cornerLights[3]) / 2;
+                    vertexLights[2] = blockLights[4];
+                    vertexLights[3] = (cornerLights[1] + cornerLights[0]) / 2;
+                }
+                case 2 -> {
+                    vertexLights[0] = blockLights[4];
+                    vertexLights[1] = (cornerLights[2] + cornerLights[3]) / 2;
+                    vertexLights[2] = cornerLights[2];
+                    vertexLights[3] = (cornerLights[2] + cornerLights[0]) / 2;
+                }
+                case 3 -> {
+                    vertexLights[3] = (cornerLights[3] + cornerLights[1]) / 2;
+                    vertexLights[0] = cornerLights[3];
+                    vertexLights[1] = (cornerLights[3] + cornerLights[2]) / 2;
+                    vertexLights[2] = blockLights[4];
+                }
+            }
+
+            // Create the vertices for the quad
+            int[] offsets = QUAD_OFFSETS[p];
+            for (int v = 0; v < 4; v++) {
+                // Vertex position, relative to the chunk origin
+                vertices.putShort(offset, (short) (x * VertexFormat.POSITION_SCALE + offsets[v * 2]));
+                vertices.putShort(offset + 2, (short) (y * VertexFormat.POSITION_SCALE + offsets[v * 2 + 1]));
+
+                // Texture coordinates
+                vertices.putShort(offset + 4, (short) texCoords[v].x);
+                vertices.putShort(offset + 6, (short) texCoords[v].y);
+
+                // Vertex light and world position
+                vertices.put(offset + 8, VertexFormat.packUnit(vertexLights[v]));
+                vertices.put(offset + 9, (byte) VertexFormat.FLAG_LIGHT);
+
+                // Animation frames
+                vertices.put(offset + 10, (byte) frameCount);
+                vertices.put(offset + 11, (byte) frameStride);
+
+                offset += VertexFormat.CHUNK_VERTEX_BYTES;
+            }
+        }
+        return quadCount;
+    }
+
+}
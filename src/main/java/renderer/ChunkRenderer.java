@@ -1,61 +1,51 @@
 package renderer;
 
-import block.BlockQuad;
 import block.Chunk;
-import core.Window;
-import org.joml.Vector2f;
-import util.AssetPool;
+import org.lwjgl.BufferUtils;
+import util.Logger;
 import util.Settings;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-
-import static org.lwjgl.glfw.GLFW.glfwGetTime;
-import static org.lwjgl.opengl.GL15.*;
-import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
-import static org.lwjgl.opengl.GL30.glGenVertexArrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class ChunkRenderer implements Comparable<ChunkRenderer> {
 
+    // Dirty blocks at most this far apart are uploaded as one range
+    private static final int UPLOAD_MERGE_GAP = 4;
+
     private Chunk chunk;
-    private final float[] vertices;
-    private int vaoID, vboID;
+    private final ByteBuffer vertices;
+    // Non-empty quads per block, their total, and how many blocks from the start a draw has to cover
+    private final byte[] blockQuadCounts = new byte[Chunk.SIZE * Chunk.SIZE];
+    private int quadCount;
+    private int drawBlocks;
     private final int zIndex;
 
-    public ChunkRenderer(int z) {
+    private final ChunkBatch batch;
+    // Slot in the batch's shared vertex buffer, -1 until start()
+    private int slot = -1;
+
+    private final ChunkMesher mesher;
+    // Mesh being built for the current chunk; the slot keeps the previous one until it is applied
+    private Future<ChunkMesh> pendingMesh;
+
+    public ChunkRenderer(int z, ChunkBatch batch, ChunkMesher mesher) {
         zIndex = z;
-        //                   |-- # of squares to draw --|- 4 per square
-        vertices = new float[Chunk.SIZE * Chunk.SIZE * 4 * 4 * 9];
+        this.batch = batch;
+        this.mesher = mesher;
+        vertices = BufferUtils.createByteBuffer(Chunk.SIZE * Chunk.SIZE * ChunkMesher.BYTES_PER_BLOCK);
     }
 
     public void start() {
-        // Generate and bind a vertex array
-        vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
-
-        // Allocate space for vertices
-        vboID = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, (long) vertices.length * Float.BYTES, GL_DYNAMIC_DRAW);
-
-        // Create and upload indices buffer
-        int eboID = glGenBuffers();
-        int[] indices = generateIndices();
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
-        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
-
-        // Enable the buffer attribute pointers
-        glVertexAttribPointer(0, 2, GL_FLOAT, false, 9 * Float.BYTES, 0);
-        glEnableVertexAttribArray(0);
-
-        glVertexAttribPointer(1, 4, GL_FLOAT, false, 9 * Float.BYTES, 2 * Float.BYTES);
-        glEnableVertexAttribArray(1);
-
-        glVertexAttribPointer(2, 2, GL_FLOAT, false, 9 * Float.BYTES, 6 * Float.BYTES);
-        glEnableVertexAttribArray(2);
+        slot = batch.allocateSlot();
+    }
 
-        glVertexAttribPointer(3, 1, GL_FLOAT, false, 9 * Float.BYTES, 8 * Float.BYTES);
-        glEnableVertexAttribArray(3);
+    public void release() {
+        // Hands the slot back to the batch; only for renderers without a chunk
+        if (slot != -1) batch.freeSlot(slot);
+        slot = -1;
     }
 
     public Chunk getChunk() {
@@ -63,184 +53,97 @@ public class ChunkRenderer implements Comparable<ChunkRenderer> {
     }
 
     public void setChunk(Chunk chunk) {
+        if (pendingMesh != null) {
+            pendingMesh.cancel(false);
+            pendingMesh = null;
+        }
+
         this.chunk = chunk;
-        loadVertices();
+        // Nothing is drawn until the new chunk's first mesh, which rewrites every block of the slot
+        Arrays.fill(blockQuadCounts, (byte) 0);
+        quadCount = 0;
+        drawBlocks = 0;
+        if (chunk != null) chunk.setChunkDirty(true);
     }
 
-    public void render() {
-        if (chunk.isChunkDirty()) {
-            loadVertices();
-            chunk.setChunkDirty(false);
+    public void update() {
+        if (chunk == null) return;
 
-            glBindBuffer(GL_ARRAY_BUFFER, vboID);
-            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        if (pendingMesh != null && pendingMesh.isDone() && mesher.tryUpload()) {
+            try {
+                applyMesh(pendingMesh.get());
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace(Logger.getErr());
+                Logger.critical("Failed to mesh chunk at " + chunk.getPosition() + ".");
+            }
+            pendingMesh = null;
         }
 
-        Shader shader = Renderer.getBoundShader();
-        shader.uploadMat4f("uWorldProj", Window.getScene().getCamera().getWorldProjection());
-        shader.uploadMat4f("uStaticProj", Window.getScene().getCamera().getStaticProjection());
-
-        Texture tex = AssetPool.getBlockTexture();
-        glActiveTexture(GL_TEXTURE0 + tex.getID());
-        tex.bind();
-
-        shader.uploadTexture("uTexture", tex.getID());
-
-        glBindVertexArray(vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
-        glEnableVertexAttribArray(3);
-
-        glDrawElements(GL_TRIANGLES, Chunk.SIZE * Chunk.SIZE * 4 * 6, GL_UNSIGNED_INT, 0);
-
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glDisableVertexAttribArray(3);
-        glBindVertexArray(0);
+        if (pendingMesh == null && chunk.isChunkDirty()) {
+            pendingMesh = mesher.submit(chunk.snapshot());
+            chunk.setChunkDirty(false);
+        }
+    }
 
-        tex.unbind();
-        shader.detach();
+    public boolean isVisible(float minX, float minY, float maxX, float maxY) {
+        if (chunk == null) return false;
+        float chunkSize = Chunk.SIZE * Settings.BLOCK_SIZE;
+        float x = chunk.getPosition().x * chunkSize;
+        float y = chunk.getPosition().y * chunkSize;
+        return x < maxX && x + chunkSize > minX && y < maxY && y + chunkSize > minY;
     }
 
-    private void loadVertices() {
-        if (chunk == null) {
-            Arrays.fill(vertices, 0);
-            return;
+    private void applyMesh(ChunkMesh mesh) {
+        int[] blocks = mesh.getBlocks();
+        byte[] meshVertices = mesh.getVertices();
+        byte[] quadCounts = mesh.getQuadCounts();
+        for (int i = 0; i < blocks.length; i++) {
+            vertices.put(blocks[i] * ChunkMesher.BYTES_PER_BLOCK, meshVertices, i * ChunkMesher.BYTES_PER_BLOCK, ChunkMesher.BYTES_PER_BLOCK);
+            quadCount += quadCounts[i] - blockQuadCounts[blocks[i]];
+            blockQuadCounts[blocks[i]] = quadCounts[i];
         }
 
-        double time = glfwGetTime();
-
-        int offset = 0;
-        for (int y = 0; y < Chunk.SIZE; y++) {
-            for (int x = 0; x < Chunk.SIZE; x++) {
-                float[] blockLights = {
-                        (chunk.getVisualLight(x - 1, y + 1) + 3) / 18f,
-                        (chunk.getVisualLight(x, y + 1) + 3) / 18f,
-                        (chunk.getVisualLight(x + 1, y + 1) + 3) / 18f,
-                        (chunk.getVisualLight(x - 1, y) + 3) / 18f,
-                        (chunk.getVisualLight(x, y) + 3) / 18f,
-                        (chunk.getVisualLight(x + 1, y) + 3) / 18f,
-                        (chunk.getVisualLight(x - 1, y - 1) + 3) / 18f,
-                        (chunk.getVisualLight(x, y - 1) + 3) / 18f,
-                        (chunk.getVisualLight(x + 1, y - 1) + 3) / 18f,
-                };
-                float[] cornerLights = {
-                        (blockLights[0] + blockLights[1] + blockLights[3] + blockLights[4]) / 4,
-                        (blockLights[1] + blockLights[2] + blockLights[4] + blockLights[5]) / 4,
-                        (blockLights[3] + blockLights[4] + blockLights[6] + blockLights[7]) / 4,
-                        (blockLights[4] + blockLights[5] + blockLights[7] + blockLights[8]) / 4,
-                };
-
-                float[] vertexLights = new float[4];
-                Vector2f[] offsets = {new Vector2f(), new Vector2f(), new Vector2f(), new Vector2f()};
-
-                for (int p = 0; p < 4; p++) {
-                    BlockQuad quad = chunk.getBlockQuad(x, y, p);
-                    if (quad == null) {
-                        for (int i = 0; i < 4 * 9; i++) {
-                            vertices[offset + i] = 0;
-                        }
-                        offset += 4 * 9;
-                        continue;
-                    }
-
-                    Vector2f[] texCoords = quad.getTexCoords(time);
-
-                    // Get the offsets and vertex lights based on p
-                    switch (p) {
-                        case 0 -> {
-                            offsets[0].set(0.5001f, 1.0001f);
-                            offsets[1].set(0.5001f, 0.4999f);
-                            offsets[2].set(-0.0001f, 0.4999f);
-                            offsets[3].set(-0.0001f, 1.0001f);
-                            vertexLights[0] = (cornerLights[0] + cornerLights[1]) / 2;
-                            vertexLights[1] = blockLights[4];
-                            vertexLights[2] = (cornerLights[0] + cornerLights[2]) / 2;
-                            vertexLights[3] = cornerLights[0];
-                        }
-                        case 1 -> {
-                            offsets[0].set(1.0001f, 1.0001f);
-                            offsets[1].set(1.0001f, 0.4999f);
-                            offsets[2].set(0.4999f, 0.4999f);
-                            offsets[3].set(0.4999f, 1.0001f);
-                            vertexLights[0] = cornerLights[1];
-                            vertexLights[1] = (cornerLights[1] + cornerLights[3]) / 2;
-                            vertexLights[2] = blockLights[4];
-                            vertexLights[3] = (cornerLights[1] + cornerLights[0]) / 2;
-                        }
-                        case 2 -> {
-                            offsets[0].set(0.5001f, 0.5001f);
-                            offsets[1].set(0.5001f, -0.0001f);
-                            offsets[2].set(-0.0001f, -0.0001f);
-                            offsets[3].set(-0.0001f, 0.5001f);
-                            vertexLights[0] = blockLights[4];
-                            vertexLights[1] = (cornerLights[2] + cornerLights[3]) / 2;
-                            vertexLights[2] = cornerLights[2];
-                            vertexLights[3] = (cornerLights[2] + cornerLights[0]) / 2;
-                        }
-                        case 3 -> {
-                            offsets[0].set(1.0001f, 0.5001f);
-                            offsets[1].set(1.0001f, -0.0001f);
-                            offsets[2].set(0.4999f, -0.0001f);
-                            offsets[3].set(0.4999f, 0.5001f);
-                            vertexLights[3] = (cornerLights[3] + cornerLights[1]) / 2;
-                            vertexLights[0] = cornerLights[3];
-                            vertexLights[1] = (cornerLights[3] + cornerLights[2]) / 2;
-                            vertexLights[2] = blockLights[4];
-                        }
-                    }
-
-                    // Create the vertices for the quad
-                    for (int v = 0; v < 4; v++) {
-                        // Vertex position
-                        vertices[offset] = chunk.getPosition().x * Chunk.SIZE * Settings.BLOCK_SIZE + (x + offsets[v].x) * Settings.BLOCK_SIZE;
-                        vertices[offset + 1] = chunk.getPosition().y * Chunk.SIZE * Settings.BLOCK_SIZE + (y + offsets[v].y) * Settings.BLOCK_SIZE;
+        // Blocks past the last non-empty one are all degenerate quads, so draws can stop there
+        drawBlocks = blockQuadCounts.length;
+        while (drawBlocks > 0 && blockQuadCounts[drawBlocks - 1] == 0) drawBlocks--;
 
-                        // Vertex color
-                        vertices[offset + 2] = vertexLights[v];
-                        vertices[offset + 3] = vertexLights[v];
-                        vertices[offset + 4] = vertexLights[v];
-                        vertices[offset + 5] = 1;
-
-                        // Texture coordinates
-                        vertices[offset + 6] = texCoords[v].x;
-                        vertices[offset + 7] = texCoords[v].y;
-
-                        // World position
-                        vertices[offset + 8] = 0;
-
-                        offset += 9;
-                    }
-                }
+        int runStart = -1, runEnd = -1;
+        for (int index : blocks) {
+            // Nearby dirty blocks share one upload rather than paying for a call each
+            if (runStart != -1 && index - runEnd > UPLOAD_MERGE_GAP) {
+                uploadBlocks(runStart, runEnd);
+                runStart = -1;
             }
+            if (runStart == -1) runStart = index;
+            runEnd = index;
         }
+        if (runStart != -1) uploadBlocks(runStart, runEnd);
     }
 
-    private int[] generateIndices() {
-        // 6 indices per quad (3 indices per triangle, 2 triangles per quad)
-        int[] elements = new int[Chunk.SIZE * Chunk.SIZE * 4 * 6];
-        for (int i = 0; i < Chunk.SIZE * Chunk.SIZE * 4; i++) {
-            loadElementIndices(elements, i);
-        }
-        return elements;
+    private void uploadBlocks(int first, int last) {
+        int start = first * ChunkMesher.BYTES_PER_BLOCK;
+        int end = (last + 1) * ChunkMesher.BYTES_PER_BLOCK;
+
+        vertices.limit(end).position(start);
+        batch.upload(slot, start, vertices);
+        vertices.clear();
     }
 
-    private void loadElementIndices(int[] elements, int index) {
-        int offsetArrayIndex = 6 * index;
-        int offset = 4 * index;
+    public boolean isDrawable() {
+        // Nothing to draw, e.g. a chunk of only air
+        return drawBlocks > 0;
+    }
+
+    public int getDrawBlocks() {
+        return drawBlocks;
+    }
 
-        // 3, 2, 0, 0, 2, 1
-        // Triangle 1
-        elements[offsetArrayIndex]     = offset + 3;
-        elements[offsetArrayIndex + 1] = offset + 2;
-        elements[offsetArrayIndex + 2] = offset;
+    public int getSlot() {
+        return slot;
+    }
 
-        // Triangle 2
-        elements[offsetArrayIndex + 3] = offset;
-        elements[offsetArrayIndex + 4] = offset + 2;
-        elements[offsetArrayIndex + 5] = offset + 1;
+    public int getQuadCount() {
+        return quadCount;
     }
 
     public boolean isEmpty() {
@@ -7,13 +7,13 @@ import util.AssetPool;
 import util.MathUtil;
 import util.Settings;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
 
 public class DebugDraw {
@@ -21,23 +21,23 @@ public class DebugDraw {
 
     private static final List<Line> lines = new ArrayList<>();
     // 6 floats per vertex, 2 vertices per line
-    private static final float[] vertexArray = new float[MAX_LINES * 6 * 2];
+    private static final int VERTEX_BYTES = 6 * Float.BYTES;
+    // Created by start() and freed by delete(), so nothing is allocated unless debug drawing is used
+    private static StreamBuffer vertexBuffer;
     private static final Shader shader = AssetPool.getShader("debug");
 
     private static int vaoID;
-    private static int vboID;
 
     private static boolean started = false;
 
     public static void start() {
         // Generate VAO
         vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
+        GLState.bindVertexArray(vaoID);
 
         // Create VBO
-        vboID = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, (long) vertexArray.length * Float.BYTES, GL_DYNAMIC_DRAW);
+        vertexBuffer = new StreamBuffer(GL_ARRAY_BUFFER, MAX_LINES * 2 * VERTEX_BYTES);
+        vertexBuffer.start();
 
         // Vertex position
         glVertexAttribPointer(0, 2, GL_FLOAT, false, 6 * Float.BYTES, 0);
@@ -66,13 +66,20 @@ public class DebugDraw {
         }
     }
 
-    public static void draw(boolean isBackground) {
-        if (lines.isEmpty()) return;
+    public static void delete() {
+        // Releases the VAO, VBO and client-side vertex memory; the next beginFrame() starts over
+        if (!started) return;
+        glDeleteVertexArrays(vaoID);
+        vertexBuffer.delete();
+        vertexBuffer = null;
+        started = false;
+    }
 
-        // Clear vertex array (removes stray lines)
-        Arrays.fill(vertexArray, 0);
+    public static void draw(boolean isBackground) {
+        if (!started || lines.isEmpty()) return;
 
-        int index = 0;
+        ByteBuffer vertices = vertexBuffer.getData();
+        int offset = 0;
         for (Line line: lines) {
             if (line.isBackground() == isBackground) {
                 for (int i = 0; i < 2; i++) {
@@ -80,45 +87,35 @@ public class DebugDraw {
                     Vector3f color = line.getColor();
 
                     // Load position
-                    vertexArray[index] = position.x;
-                    vertexArray[index + 1] = position.y;
+                    vertices.putFloat(offset, position.x);
+                    vertices.putFloat(offset + 4, position.y);
 
                     // Load color
-                    vertexArray[index + 2] = color.x;
-                    vertexArray[index + 3] = color.y;
-                    vertexArray[index + 4] = color.z;
+                    vertices.putFloat(offset + 8, color.x);
+                    vertices.putFloat(offset + 12, color.y);
+                    vertices.putFloat(offset + 16, color.z);
 
                     // Load isStatic
-                    vertexArray[index + 5] = line.isStatic() ? 1 : 0;
+                    vertices.putFloat(offset + 20, line.isStatic() ? 1 : 0);
 
-                    index += 6;
+                    offset += VERTEX_BYTES;
                 }
             }
         }
+        if (offset == 0) return;
 
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferSubData(GL_ARRAY_BUFFER, 0, vertexArray);
+        // Rewritten every frame, so always orphan
+        vertexBuffer.uploadAll(offset);
 
-        // Use shader and upload camera projection and view
+        // Use shader; camera matrices come from the shared uniform buffer
+        CameraUniforms.update(Window.getScene().getCamera());
         shader.use();
-        shader.uploadMat4f("uView", Window.getScene().getCamera().getViewMatrix());
-        shader.uploadMat4f("uProjection", Window.getScene().getCamera().getProjectionMatrix());
-        shader.uploadMat4f("uStaticProjection", Window.getScene().getCamera().getStaticProjection());
 
         // Bind VAO
-        glBindVertexArray(vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
+        GLState.bindVertexArray(vaoID);
 
         // Draw batch
-        glDrawArrays(GL_LINES, 0, lines.size() * 6 * 2);
-
-        // Disable location
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glBindVertexArray(0);
+        glDrawArrays(GL_LINES, 0, offset / VERTEX_BYTES);
 
         // Detach shader
         shader.detach();
@@ -0,0 +1,46 @@
+package renderer;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+import static org.lwjgl.opengl.GL11.glBindTexture;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL20.glUseProgram;
+import static org.lwjgl.opengl.GL30.glBindVertexArray;
+
+public class GLState {
+
+    // Mirrors the bindings made through this class so repeated binds of the same object are skipped.
+    // ImGui restores whatever it changes, so the mirror stays accurate across its frame.
+    private static int program = 0;
+    private static int vertexArray = 0;
+    private static int activeUnit = 0;
+    private static final int[] boundTextures = new int[80];
+
+    public static void useProgram(int id) {
+        if (program == id) return;
+        glUseProgram(id);
+        program = id;
+    }
+
+    public static void bindVertexArray(int id) {
+        if (vertexArray == id) return;
+        glBindVertexArray(id);
+        vertexArray = id;
+    }
+
+    public static void activeTexture(int unit) {
+        if (activeUnit == unit) return;
+        glActiveTexture(GL_TEXTURE0 + unit);
+        activeUnit = unit;
+    }
+
+    public static void bindTexture(int id) {
+        // Units past the table are bound every time
+        if (activeUnit < boundTextures.length) {
+            if (boundTextures[activeUnit] == id) return;
+            boundTextures[activeUnit] = id;
+        }
+        glBindTexture(GL_TEXTURE_2D, id);
+    }
+
+}
@@ -1,17 +1,18 @@
 package renderer;
 
-import core.Window;
 import entity.Entity;
-import org.joml.*;
+import org.joml.Vector2f;
+import org.joml.Vector4f;
 import util.AssetPool;
 import util.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
-import static org.lwjgl.opengl.GL30.glBindVertexArray;
+import static org.lwjgl.opengl.GL30.glDeleteVertexArrays;
 import static org.lwjgl.opengl.GL30.glGenVertexArrays;
 
 public class RenderBatch implements Comparable<RenderBatch> {
@@ -21,7 +22,8 @@ public class RenderBatch implements Comparable<RenderBatch> {
     private final Texture texture;
     private final int zIndex;
 
-    private final float[] vertices;
+    private final StreamBuffer vertexBuffer;
+    private final ByteBuffer vertices;
 
     private final Vector2f[][] imagePositions;
     private final Vector4f[] imageColors;
@@ -31,13 +33,21 @@ public class RenderBatch implements Comparable<RenderBatch> {
     private final boolean[] imagesDirty;
     private final boolean[] imagesPresent;
 
-    private int vaoID, vboID;
+    // Unused slots; the lowest is always reused first, so usedSlots stays as small as possible
+    private final BitSet freeSlots = new BitSet();
+    // One past the highest slot ever handed out; draws stop there
+    private int usedSlots;
+    // Span of slots changed since the last upload, empty while dirtyMin > dirtyMax
+    private int dirtyMin = Integer.MAX_VALUE, dirtyMax = -1;
+
+    private int vaoID, eboID;
 
     public RenderBatch(Texture tex, int z) {
         texture = tex;
         zIndex = z;
 
-        vertices = new float[MAX_BATCH_SIZE * 4 * 9];
+        vertexBuffer = new StreamBuffer(GL_ARRAY_BUFFER, MAX_BATCH_SIZE * 4 * VertexFormat.BATCH_VERTEX_BYTES);
+        vertices = vertexBuffer.getData();
 
         imagePositions = new Vector2f[MAX_BATCH_SIZE][4];
         imageColors = new Vector4f[MAX_BATCH_SIZE];
@@ -46,138 +56,135 @@ public class RenderBatch implements Comparable<RenderBatch> {
         imagesVisible = new boolean[MAX_BATCH_SIZE];
         imagesDirty = new boolean[MAX_BATCH_SIZE];
         imagesPresent = new boolean[MAX_BATCH_SIZE];
+
+        freeSlots.set(0, MAX_BATCH_SIZE);
     }
 
     public void start() {
         vaoID = glGenVertexArrays();
-        glBindVertexArray(vaoID);
+        GLState.bindVertexArray(vaoID);
 
-        vboID = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboID);
-        glBufferData(GL_ARRAY_BUFFER, (long) vertices.length * Float.BYTES, GL_DYNAMIC_DRAW);
+        vertexBuffer.start();
 
-        int eboID = glGenBuffers();
+        eboID = glGenBuffers();
         int[] indices = generateIndices();
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboID);
         glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
 
-        // Shader: layout (location = 0) in vec3 aPos;
-        glVertexAttribPointer(0, 2, GL_FLOAT, false, 9 * Float.BYTES, 0);
-        glEnableVertexAttribArray(0);
-
-        // Shader: layout (location = 1) in vec4 aColor;
-        glVertexAttribPointer(1, 4, GL_FLOAT, false, 9 * Float.BYTES, 2 * Float.BYTES);
-        glEnableVertexAttribArray(1);
-
-        // Shader: layout (location = 2) in vec2 aTexCoords;
-        glVertexAttribPointer(2, 2, GL_FLOAT, false, 9 * Float.BYTES, 6 * Float.BYTES);
-        glEnableVertexAttribArray(2);
-
-        // Shader: layout (location = 3) in float aStatic;
-        glVertexAttribPointer(3, 1, GL_FLOAT, false, 9 * Float.BYTES, 8 * Float.BYTES);
-        glEnableVertexAttribArray(3);
+        VertexFormat.enableBatchAttributes();
     }
 
     public int add(Vector2f[] position, Vector4f color, Vector2f[] texCoords, boolean staticPos, boolean visible) {
-        int index = -1;
-        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
-            if (!imagesPresent[i]) {
-                index = i;
-                break;
-            }
-        }
+        if (freeSlots.isEmpty()) return -1;
 
-        if (index == -1) return index;
+        int index = freeSlots.nextSetBit(0);
+        freeSlots.clear(index);
+        usedSlots = Math.max(usedSlots, index + 1);
 
         imagePositions[index] = position;
         imageColors[index] = color;
         imageTexCoords[index] = texCoords;
         imagesStatic[index] = staticPos;
         imagesVisible[index] = visible;
-        imagesDirty[index] = true;
         imagesPresent[index] = true;
+        markDirty(index);
 
         return index;
     }
 
     public void remove(int index) {
+        if (!imagesPresent[index]) return;
+
         imagesPresent[index] = false;
+        freeSlots.set(index);
+        markDirty(index);
+    }
+
+    public boolean isFull() {
+        return freeSlots.isEmpty();
+    }
+
+    private void markDirty(int index) {
         imagesDirty[index] = true;
+        dirtyMin = Math.min(dirtyMin, index);
+        dirtyMax = Math.max(dirtyMax, index);
+    }
+
+    public void delete() {
+        glDeleteVertexArrays(vaoID);
+        glDeleteBuffers(eboID);
+        vertexBuffer.delete();
     }
 
     public void render() {
-        boolean rebuffer = false;
-        for (int i = 0; i < MAX_BATCH_SIZE; i++) {
-            if (imagesDirty[i]) {
-                loadVertices(i);
-                imagesDirty[i] = false;
-                rebuffer = true;
+        if (dirtyMin <= dirtyMax) {
+            for (int i = dirtyMin; i <= dirtyMax; i++) {
+                if (imagesDirty[i]) {
+                    loadVertices(i);
+                    imagesDirty[i] = false;
+                }
+            }
+
+            // Upload only the changed span, or replace the whole buffer once most of it changed
+            int quadBytes = 4 * VertexFormat.BATCH_VERTEX_BYTES;
+            if ((dirtyMax - dirtyMin + 1) * 2 > usedSlots) {
+                vertexBuffer.uploadAll(usedSlots * quadBytes);
+            } else {
+                vertexBuffer.upload(dirtyMin * quadBytes, (dirtyMax - dirtyMin + 1) * quadBytes);
             }
-        }
 
-        if (rebuffer) {
-            glBindBuffer(GL_ARRAY_BUFFER, vboID);
-            glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+            dirtyMin = Integer.MAX_VALUE;
+            dirtyMax = -1;
         }
 
         Shader shader = Renderer.getBoundShader();
-        shader.uploadMat4f("uWorldProj", Window.getScene().getCamera().getWorldProjection());
-        shader.uploadMat4f("uStaticProj", Window.getScene().getCamera().getStaticProjection());
+        shader.use();
+        shader.uploadFloat("uPosScale", 1);
 
-        glActiveTexture(GL_TEXTURE0 + texture.getID());
+        GLState.activeTexture(texture.getID());
         texture.bind();
 
         shader.uploadTexture("uTexture", texture.getID());
 
-        glBindVertexArray(vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
-        glEnableVertexAttribArray(3);
-
-        glDrawElements(GL_TRIANGLES, MAX_BATCH_SIZE * 4 * 6, GL_UNSIGNED_INT, 0);
+        // Attribute arrays stay enabled in the vertex array, set up once in start()
+        GLState.bindVertexArray(vaoID);
+        // Batch positions are already in pixels, so the origin stays at zero
+        glVertexAttrib2f(6, 0, 0);
 
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glDisableVertexAttribArray(3);
-        glBindVertexArray(0);
-
-        texture.unbind();
-        shader.detach();
+        glDrawElements(GL_TRIANGLES, usedSlots * 6, GL_UNSIGNED_INT, 0);
     }
 
     private void loadVertices(int index) {
-        // Find offset within array (4 vertices per quad)
-        int offset = index * 4 * 9;
+        // Find offset within buffer (4 vertices per quad)
+        int offset = index * 4 * VertexFormat.BATCH_VERTEX_BYTES;
 
         // Reset vertex data if invisible or nonexistent
         if (!imagesPresent[index] || !imagesVisible[index]) {
-            for (int i = 0; i < 4 * 9; i++) {
-                vertices[offset + i] = 0;
+            for (int i = 0; i < 4 * VertexFormat.BATCH_VERTEX_BYTES; i++) {
+                vertices.put(offset + i, (byte) 0);
             }
             return;
         }
 
         for (int v = 0; v < 4; v++) {
             // Vertex position
-            vertices[offset] = imagePositions[index][v].x;
-            vertices[offset + 1] = imagePositions[index][v].y;
-
-            // Vertex color
-            vertices[offset + 2] = imageColors[index].x;
-            vertices[offset + 3] = imageColors[index].y;
-            vertices[offset + 4] = imageColors[index].z;
-            vertices[offset + 5] = imageColors[index].w;
+            vertices.putFloat(offset, imagePositions[index][v].x);
+            vertices.putFloat(offset + 4, imagePositions[index][v].y);
 
             // Texture coordinates
-            vertices[offset + 6] = imageTexCoords[index][v].x;
-            vertices[offset + 7] = imageTexCoords[index][v].y;
+            vertices.putShort(offset + 8, (short) imageTexCoords[index][v].x);
+            vertices.putShort(offset + 10, (short) imageTexCoords[index][v].y);
+
+            // Vertex color
+            vertices.put(offset + 12, VertexFormat.packUnit(imageColors[index].x));
+            vertices.put(offset + 13, VertexFormat.packUnit(imageColors[index].y));
+            vertices.put(offset + 14, VertexFormat.packUnit(imageColors[index].z));
+            vertices.put(offset + 15, VertexFormat.packUnit(imageColors[index].w));
 
             // Static/World position
-            vertices[offset + 8] = imagesStatic[index] ? 1 : 0;
+            vertices.put(offset + 16, (byte) (imagesStatic[index] ? VertexFormat.FLAG_STATIC : 0));
 
-            offset += 9;
+            offset += VertexFormat.BATCH_VERTEX_BYTES;
         }
     }
 
@@ -216,22 +223,22 @@ public class RenderBatch implements Comparable<RenderBatch> {
 
     public void setPosition(int index, Vector2f[] position) {
         imagePositions[index] = position;
-        imagesDirty[index] = true;
+        markDirty(index);
     }
 
     public void setColor(int index, Vector4f color) {
         imageColors[index] = color;
-        imagesDirty[index] = true;
+        markDirty(index);
     }
 
     public void setTexCoords(int index, Vector2f[] texCoords) {
         imageTexCoords[index] = texCoords;
-        imagesDirty[index] = true;
+        markDirty(index);
     }
 
     public void setVisible(int index, boolean visible) {
         imagesVisible[index] = visible;
-        imagesDirty[index] = true;
+        markDirty(index);
     }
 
     @Override
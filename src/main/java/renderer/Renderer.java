@@ -1,63 +1,87 @@
 package renderer;
 
 import block.Chunk;
+import core.Camera;
+import core.Window;
 import entity.Entity;
 import gui.GuiElement;
 import util.AssetPool;
 import util.EntityAppearance;
+import util.Logger;
+import util.Settings;
 
 import org.joml.Vector2f;
 import org.joml.Vector4f;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 
 public class Renderer {
 
     private final ArrayList<Entity> entities = new ArrayList<>();
     private final ArrayList<GuiElement> guiElements = new ArrayList<>();
 
+    // Renderers with a chunk, and idle ones kept with their slot for the next chunk to load
     private final ArrayList<ChunkRenderer> chunks = new ArrayList<>();
+    private final ArrayDeque<ChunkRenderer> chunkPool = new ArrayDeque<>();
+    // Sorted by z index for drawing
     private final ArrayList<RenderBatch> batches = new ArrayList<>();
+    // Batches keyed by batchKey(texture ID, z index)
+    private final HashMap<Long, RenderBatch> batchLookup = new HashMap<>();
+
+    private final ChunkMesher chunkMesher = new ChunkMesher(Settings.CHUNK_MESH_THREADS);
+    private final ChunkBatch chunkBatch = new ChunkBatch(64);
+    // Reused every frame for the chunks that pass culling
+    private final ArrayList<ChunkRenderer> visibleChunks = new ArrayList<>();
 
     private static Shader currentShader;
 
+    // Chunks drawn and skipped as off-screen during the last render()
+    private int chunksDrawn, chunksCulled;
+
     public Renderer() {
 
     }
 
+    public void start() {
+        // GL objects are only created here, once the scene starts, so scenes can be built and lit without a context
+        chunkBatch.start();
+    }
+
     public int addImage(Texture texture, int zIndex, Vector2f[] position, Vector4f color, Vector2f[] texCoords, boolean staticPos, boolean visible) {
-        int index = -1;
-        for (RenderBatch batch : batches) {
-            if (batch.getTexID() == texture.getID() && batch.getZIndex() == zIndex) {
-                index = batch.add(position, color, texCoords, staticPos, visible);
-                break;
-            }
+        RenderBatch batch = getBatch(texture.getID(), zIndex);
+        if (batch == null) {
+            batch = new RenderBatch(texture, zIndex);
+            batch.start();
+            batchLookup.put(batchKey(texture.getID(), zIndex), batch);
+
+            // Insert after any batches with the same z index, keeping the list sorted without a full sort
+            int insertAt = batches.size();
+            while (insertAt > 0 && batches.get(insertAt - 1).compareTo(batch) > 0) insertAt--;
+            batches.add(insertAt, batch);
         }
 
-        if (index == -1) {
-            RenderBatch newBatch = new RenderBatch(texture, zIndex);
-            newBatch.start();
-            batches.add(newBatch);
-            index = newBatch.add(position, color, texCoords, staticPos, visible);
-            Collections.sort(batches);
+        // Callers address images by (texture, z, index), so a full batch can't spill into a second one
+        if (batch.isFull()) {
+            Logger.warning("Render batch for texture", texture.getID(), "at z index", zIndex, "is full.");
+            return -1;
         }
-
-        return index;
+        return batch.add(position, color, texCoords, staticPos, visible);
     }
 
     public void removeImage(int texID, int zIndex, int index) {
-        getBatch(texID, zIndex).remove(index);
+        RenderBatch batch = getBatch(texID, zIndex);
+        if (batch != null && index != -1) batch.remove(index);
     }
 
     public RenderBatch getBatch(int texID, int zIndex) {
-        for (RenderBatch batch : batches) {
-            if (batch.getTexID() == texID && batch.getZIndex() == zIndex) {
-                return batch;
-            }
-        }
+        return batchLookup.get(batchKey(texID, zIndex));
+    }
 
-        return null;
+    private static long batchKey(int texID, int zIndex) {
+        return ((long) texID << 32) | (zIndex & 0xFFFFFFFFL);
     }
 
     public void addGuiElement(GuiElement element) {
@@ -88,46 +112,83 @@ public class Renderer {
         RenderBatch containing = getBatch(AssetPool.getEntityTexture().getID(), 0);
         if (containing != null) {
             for (int index : entity.getElementIndices()) {
-                containing.remove(index);
+                if (index != -1) containing.remove(index);
             }
         }
     }
 
     public void addChunk(Chunk toAdd) {
-        boolean added = false;
-
-        for (ChunkRenderer chunk : chunks) {
-            if (chunk.isEmpty()) {
-                chunk.setChunk(toAdd);
-                added = true;
-                break;
-            }
-        }
-
-        if (!added) {
-            ChunkRenderer chunk = new ChunkRenderer(0);
+        ChunkRenderer chunk = chunkPool.poll();
+        if (chunk == null) {
+            chunk = new ChunkRenderer(0, chunkBatch, chunkMesher);
             chunk.start();
-            chunks.add(chunk);
-            chunk.setChunk(toAdd);
-            Collections.sort(chunks);
         }
+        chunk.setChunk(toAdd);
+        chunks.add(chunk);
+        Collections.sort(chunks);
     }
 
     public void removeChunk(Chunk toRemove) {
-        for (ChunkRenderer chunk : chunks) {
-            if (chunk.getChunk().equals(toRemove))
-                chunk.setChunk(null);
+        for (int i = 0; i < chunks.size(); i++) {
+            ChunkRenderer chunk = chunks.get(i);
+            if (chunk.getChunk() != toRemove) continue;
+
+            chunks.remove(i);
+            chunk.setChunk(null);
+            // Keep a few renderers around for streaming to reuse; the rest give their slot back
+            if (chunkPool.size() < Settings.CHUNK_RENDERER_POOL_SIZE) chunkPool.push(chunk);
+            else chunk.release();
+            return;
         }
     }
 
+    public int getChunkRenderersActive() {
+        return chunks.size();
+    }
+
+    public int getChunkRenderersPooled() {
+        return chunkPool.size();
+    }
+
+    public long getChunkGpuBytes() {
+        return chunkBatch.getGpuBytes();
+    }
+
+    public void delete() {
+        chunkMesher.shutdown();
+        chunkBatch.delete();
+        for (RenderBatch batch : batches) {
+            batch.delete();
+        }
+        CameraUniforms.delete();
+        DebugDraw.delete();
+    }
+
     public static void bindShader(Shader shader) {
         currentShader = shader;
     }
 
+    public int getChunksDrawn() {
+        return chunksDrawn;
+    }
+
+    public int getChunksCulled() {
+        return chunksCulled;
+    }
+
     public static Shader getBoundShader() {
         return currentShader;
     }
 
+    public void update() {
+        // Meshing and its upload budget advance once per frame, however many passes render() draws
+        chunkMesher.beginFrame();
+        for (ChunkRenderer chunk : chunks) {
+            // Off-screen chunks still mesh so they are ready when scrolled into view
+            chunk.update();
+        }
+    }
+
     public void render() {
         for (Entity entity : entities) {
             if (entity.isDirty()) {
@@ -138,6 +199,8 @@ public class Renderer {
                     Vector2f entityPos = new Vector2f().set(entity.getPosition());
                     int[] indices = entity.getElementIndices();
                     for (int i = 0; i < appearance.numElements(); i++) {
+                        // Elements that didn't fit in the batch have no slot
+                        if (indices[i] == -1) continue;
                         Vector4f place = new Vector4f(appearance.getPlace(i));
                         place.add(entityPos.x, entityPos.y, 0, 0);
                         Vector2f[] position = {new Vector2f(place.x + place.z, place.y + place.w), new Vector2f(place.x + place.z, place.y), new Vector2f(place.x, place.y), new Vector2f(place.x, place.y + place.w)};
@@ -157,12 +220,30 @@ public class Renderer {
             }
         }
 
+        // Visible world rectangle; the camera position is the center of the view
+        Camera camera = Window.getScene().getCamera();
+        float halfWidth = camera.getProjectionSize().x * camera.getZoom() / 2;
+        float halfHeight = camera.getProjectionSize().y * camera.getZoom() / 2;
+        float minX = camera.position.x - halfWidth, maxX = camera.position.x + halfWidth;
+        float minY = camera.position.y - halfHeight, maxY = camera.position.y + halfHeight;
+
+        CameraUniforms.update(camera);
         currentShader.use();
+        chunksDrawn = 0;
+        chunksCulled = 0;
+        visibleChunks.clear();
         for (ChunkRenderer chunk : chunks) {
-            chunk.render();
+            if (chunk.isVisible(minX, minY, maxX, maxY)) {
+                if (chunk.isDrawable()) visibleChunks.add(chunk);
+                chunksDrawn++;
+            } else if (!chunk.isEmpty()) {
+                chunksCulled++;
+            }
         }
+        chunkBatch.render(visibleChunks);
         for (RenderBatch batch : batches) {
             batch.render();
         }
+        currentShader.detach();
     }
 }
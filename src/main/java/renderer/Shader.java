@@ -8,15 +8,19 @@ import java.io.IOException;
 import java.nio.FloatBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
 
 import static org.lwjgl.opengl.GL11.GL_FALSE;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL20.glGetShaderInfoLog;
+import static org.lwjgl.opengl.GL31.*;
 
 public class Shader {
 
     private int shaderProgramID;
-    private boolean beingUsed = false;
+    // Uniform locations by name, looked up once, along with the last value sent to each
+    private final HashMap<String, Uniform> uniforms = new HashMap<>();
+    private static final FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
 
     private String vertexSource;
     private String fragmentSource;
@@ -88,31 +92,39 @@ public class Shader {
         if (glGetProgrami(shaderProgramID, GL_LINK_STATUS) == GL_FALSE) {
             Logger.critical(filePath + ": Shader linking failed:\n" + glGetProgramInfoLog(shaderProgramID, glGetProgrami(shaderProgramID, GL_INFO_LOG_LENGTH)));
         }
+
+        // Camera matrices come from the shared uniform buffer
+        int cameraBlock = glGetUniformBlockIndex(shaderProgramID, CameraUniforms.BLOCK_NAME);
+        if (cameraBlock != GL_INVALID_INDEX) glUniformBlockBinding(shaderProgramID, cameraBlock, CameraUniforms.BINDING);
     }
 
     public void use() {
-        if (!beingUsed) {
-            // Bind shader program
-            glUseProgram(shaderProgramID);
-            beingUsed = true;
-        }
+        // Bind shader program
+        GLState.useProgram(shaderProgramID);
     }
 
     public void detach() {
-        glUseProgram(0);
-        beingUsed = false;
+        GLState.useProgram(0);
+    }
+
+    private Uniform getUniform(String varName) {
+        Uniform uniform = uniforms.get(varName);
+        if (uniform == null) {
+            uniform = new Uniform(glGetUniformLocation(shaderProgramID, varName));
+            uniforms.put(varName, uniform);
+        }
+        return uniform;
     }
 
     public void uploadMat4f(String varName, Matrix4f mat) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
         use();
-        FloatBuffer matBuffer = BufferUtils.createFloatBuffer(16);
         mat.get(matBuffer);
         glUniformMatrix4fv(varLocation, false, matBuffer);
     }
 
     public void uploadMat3f(String varName, Matrix3f mat) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
         use();
         FloatBuffer matBuffer = BufferUtils.createFloatBuffer(9);
         mat.get(matBuffer);
@@ -120,44 +132,69 @@ public class Shader {
     }
 
     public void uploadVec4f(String varName, Vector4f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
         use();
         glUniform4f(varLocation, vec.x, vec.y, vec.z, vec.w);
     }
 
     public void uploadVec3f(String varName, Vector3f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
         use();
         glUniform3f(varLocation, vec.x, vec.y, vec.z);
     }
 
     public void uploadVec4f(String varName, Vector2f vec) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
+        use();
+        glUniform2f(varLocation, vec.x, vec.y);
+    }
+
+    public void uploadVec2f(String varName, Vector2f vec) {
+        int varLocation = getUniform(varName).location;
         use();
         glUniform2f(varLocation, vec.x, vec.y);
     }
 
     public void uploadFloat(String varName, float val) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = getUniform(varName);
+        if (uniform.set && uniform.floatValue == val) return;
+        uniform.set = true;
+        uniform.floatValue = val;
         use();
-        glUniform1f(varLocation, val);
+        glUniform1f(uniform.location, val);
     }
 
     public void uploadInt(String varName, int val) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        Uniform uniform = getUniform(varName);
+        if (uniform.set && uniform.intValue == val) return;
+        uniform.set = true;
+        uniform.intValue = val;
         use();
-        glUniform1i(varLocation, val);
+        glUniform1i(uniform.location, val);
     }
 
     public void uploadTexture(String varName, int slot) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
-        use();
-        glUniform1i(varLocation, slot);
+        uploadInt(varName, slot);
     }
 
     public void uploadIntArray(String varName, int[] array) {
-        int varLocation = glGetUniformLocation(shaderProgramID, varName);
+        int varLocation = getUniform(varName).location;
         use();
         glUniform1iv(varLocation, array);
     }
+
+    private static class Uniform {
+
+        private final int location;
+        // Scalars remember their last value so repeat uploads can be skipped
+        private boolean set;
+        private int intValue;
+        private float floatValue;
+
+        private Uniform(int location) {
+            this.location = location;
+        }
+
+    }
+
 }
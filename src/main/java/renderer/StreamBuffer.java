@@ -0,0 +1,59 @@
+package renderer;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+
+public class StreamBuffer {
+
+    private final int target;
+    private final int capacity;
+    // Off-heap copy of the buffer's contents; callers write vertices straight into it
+    private final ByteBuffer data;
+    private int bufferID;
+
+    public StreamBuffer(int target, int capacity) {
+        this.target = target;
+        this.capacity = capacity;
+        data = MemoryUtil.memCalloc(capacity);
+    }
+
+    public void start() {
+        bufferID = glGenBuffers();
+        glBindBuffer(target, bufferID);
+        glBufferData(target, capacity, GL_STREAM_DRAW);
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void upload(int offset, int length) {
+        // Small updates go in place
+        glBindBuffer(target, bufferID);
+        data.limit(offset + length).position(offset);
+        glBufferSubData(target, offset, data);
+        data.clear();
+    }
+
+    public void uploadAll(int length) {
+        // Orphan the old storage so the driver hands out fresh memory rather than waiting for the GPU to finish with it
+        glBindBuffer(target, bufferID);
+        glBufferData(target, capacity, GL_STREAM_DRAW);
+        data.limit(length).position(0);
+        glBufferSubData(target, 0, data);
+        data.clear();
+    }
+
+    public void delete() {
+        glDeleteBuffers(bufferID);
+        MemoryUtil.memFree(data);
+    }
+
+}
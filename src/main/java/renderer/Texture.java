@@ -38,11 +38,11 @@ public class Texture {
 
     public void bind() {
         if (texID == -1) texID = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, texID);
+        GLState.bindTexture(texID);
     }
 
     public void unbind() {
-        glBindTexture(GL_TEXTURE_2D, 0);
+        GLState.bindTexture(0);
     }
 
     public Image addImage(String name, String path) {
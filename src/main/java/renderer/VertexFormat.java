@@ -0,0 +1,79 @@
+package renderer;
+
+import static org.lwjgl.opengl.GL20.*;
+
+public class VertexFormat {
+
+    // Chunk vertex: short x, y relative to the chunk origin in 1 / POSITION_SCALE blocks,
+    // ushort u, v in texels, ubyte light, ubyte flags, ubyte frame count, byte frame stride in texels
+    public static final int CHUNK_VERTEX_BYTES = 12;
+    // Batch vertex: float x, y in pixels, ushort u, v in texels, ubyte r, g, b, a, ubyte flags,
+    // ubyte frame count, byte frame stride, 1 byte padding; batches animate on the CPU so frames stay 0
+    public static final int BATCH_VERTEX_BYTES = 20;
+
+    // Position units per block in chunk vertices; a chunk spans 16 * 1024 units, well inside a short
+    public static final int POSITION_SCALE = 1024;
+
+    // Position is on screen (uStaticProj) rather than in the world (uWorldProj)
+    public static final int FLAG_STATIC = 1;
+    // Color is a single light level, stored in the first channel
+    public static final int FLAG_LIGHT = 2;
+
+    public static void enableChunkAttributes() {
+        // Shader: layout (location = 0) in vec2 aPos;
+        glVertexAttribPointer(0, 2, GL_SHORT, false, CHUNK_VERTEX_BYTES, 0);
+        glEnableVertexAttribArray(0);
+
+        // Shader: layout (location = 1) in vec4 aColor;
+        glVertexAttribPointer(1, 1, GL_UNSIGNED_BYTE, true, CHUNK_VERTEX_BYTES, 8);
+        glEnableVertexAttribArray(1);
+
+        // Shader: layout (location = 2) in vec2 aTexCoords;
+        glVertexAttribPointer(2, 2, GL_UNSIGNED_SHORT, false, CHUNK_VERTEX_BYTES, 4);
+        glEnableVertexAttribArray(2);
+
+        // Shader: layout (location = 3) in float aFlags;
+        glVertexAttribPointer(3, 1, GL_UNSIGNED_BYTE, false, CHUNK_VERTEX_BYTES, 9);
+        glEnableVertexAttribArray(3);
+
+        // Shader: layout (location = 4) in float aFrameCount;
+        glVertexAttribPointer(4, 1, GL_UNSIGNED_BYTE, false, CHUNK_VERTEX_BYTES, 10);
+        glEnableVertexAttribArray(4);
+
+        // Shader: layout (location = 5) in float aFrameStride;
+        glVertexAttribPointer(5, 1, GL_BYTE, false, CHUNK_VERTEX_BYTES, 11);
+        glEnableVertexAttribArray(5);
+    }
+
+    public static void enableBatchAttributes() {
+        // Shader: layout (location = 0) in vec2 aPos;
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, BATCH_VERTEX_BYTES, 0);
+        glEnableVertexAttribArray(0);
+
+        // Shader: layout (location = 1) in vec4 aColor;
+        glVertexAttribPointer(1, 4, GL_UNSIGNED_BYTE, true, BATCH_VERTEX_BYTES, 12);
+        glEnableVertexAttribArray(1);
+
+        // Shader: layout (location = 2) in vec2 aTexCoords;
+        glVertexAttribPointer(2, 2, GL_UNSIGNED_SHORT, false, BATCH_VERTEX_BYTES, 8);
+        glEnableVertexAttribArray(2);
+
+        // Shader: layout (location = 3) in float aFlags;
+        glVertexAttribPointer(3, 1, GL_UNSIGNED_BYTE, false, BATCH_VERTEX_BYTES, 16);
+        glEnableVertexAttribArray(3);
+
+        // Shader: layout (location = 4) in float aFrameCount;
+        glVertexAttribPointer(4, 1, GL_UNSIGNED_BYTE, false, BATCH_VERTEX_BYTES, 17);
+        glEnableVertexAttribArray(4);
+
+        // Shader: layout (location = 5) in float aFrameStride;
+        glVertexAttribPointer(5, 1, GL_BYTE, false, BATCH_VERTEX_BYTES, 18);
+        glEnableVertexAttribArray(5);
+    }
+
+    public static byte packUnit(float value) {
+        // Maps 0..1 to an unsigned byte, as GL reads it back with normalization
+        return (byte) Math.round(Math.max(0, Math.min(1, value)) * 255);
+    }
+
+}
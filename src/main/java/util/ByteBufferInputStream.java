@@ -0,0 +1,34 @@
+package util;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class ByteBufferInputStream extends InputStream {
+
+    // Reads straight out of the buffer, e.g. a mapped file or a reused decode buffer, without copying it first
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+        if (length == 0) return 0;
+        if (!buffer.hasRemaining()) return -1;
+        length = Math.min(length, buffer.remaining());
+        buffer.get(bytes, offset, length);
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return buffer.remaining();
+    }
+
+}
@@ -5,6 +5,9 @@ import org.joml.Vector2i;
 
 public class Image {
 
+    // Seconds each animation frame is shown for
+    public static final float FRAME_TIME = 0.1f;
+
     private final Vector2i size;
     private final Vector2i[] pos;
     private final float frameTime;
@@ -12,7 +15,7 @@ public class Image {
     public Image(Vector2i size, Vector2i[] pos) {
         this.size = size;
         this.pos = pos;
-        this.frameTime = 0.1f;
+        this.frameTime = FRAME_TIME;
     }
 
     public Vector2i getSize() {
@@ -23,6 +26,15 @@ public class Image {
         return pos;
     }
 
+    public int getFrameCount() {
+        return pos.length;
+    }
+
+    public int getFrameStride() {
+        // Frames are stacked vertically in the atlas, evenly spaced
+        return pos.length > 1 ? pos[1].y - pos[0].y : 0;
+    }
+
     public Vector2f[] getTexCoords(double time) {
         int frame = (int) (time % (frameTime * pos.length) / frameTime);
         return new Vector2f[]{
@@ -0,0 +1,58 @@
+package util;
+
+public class IntQueue {
+
+    private int[] elements;
+    private int head, size;
+
+    public IntQueue() {
+        this(64);
+    }
+
+    public IntQueue(int capacity) {
+        // Capacity stays a power of two so wrapping is a mask
+        elements = new int[Integer.highestOneBit(Math.max(capacity - 1, 3)) << 1];
+        head = 0;
+        size = 0;
+    }
+
+    public void push(int value) {
+        if (size == elements.length) grow();
+        elements[(head + size) & (elements.length - 1)] = value;
+        size++;
+    }
+
+    public int pop() {
+        int value = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        size--;
+        return value;
+    }
+
+    public int get(int index) {
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int[] grown = new int[elements.length * 2];
+        int firstPart = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, size - firstPart);
+        elements = grown;
+        head = 0;
+    }
+
+}
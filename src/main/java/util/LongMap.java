@@ -0,0 +1,166 @@
+package util;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class LongMap<V> {
+
+    // Open addressing with linear probing; a null value marks an empty slot, so values can't be null
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    private final Collection<V> valueView = new AbstractCollection<>() {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    };
+
+    public LongMap() {
+        this(16);
+    }
+
+    public LongMap(int capacity) {
+        // Capacity stays a power of two, at most half full
+        int slots = Integer.highestOneBit(Math.max(capacity * 2 - 1, 7)) << 1;
+        keys = new long[slots];
+        values = new Object[slots];
+        mask = slots - 1;
+    }
+
+    public static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            Object value = values[i];
+            if (value == null) return null;
+            if (keys[i] == key) return (V) value;
+        }
+    }
+
+    public V get(int x, int y) {
+        return get(key(x, y));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null) throw new IllegalArgumentException("LongMap values can't be null");
+
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > values.length) resize(values.length * 2);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) break;
+        }
+        V old = (V) values[i];
+        if (old == null) return null;
+
+        // Shift later entries of the probe run back, so lookups never stop early at the hole
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public Collection<V> values() {
+        // Live view; the map must not change while it is being iterated
+        return valueView;
+    }
+
+    private int slot(long key) {
+        // Mix both halves, chunk coordinates are small and clustered
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void resize(int slots) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[slots];
+        values = new Object[slots];
+        mask = slots - 1;
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            int j = slot(oldKeys[i]);
+            while (values[j] != null) j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            values[j] = oldValues[i];
+        }
+    }
+
+    private class ValueIterator implements Iterator<V> {
+
+        private int next = advance(0);
+
+        private int advance(int from) {
+            while (from < values.length && values[from] == null) from++;
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (next >= values.length) throw new NoSuchElementException();
+            V value = (V) values[next];
+            next = advance(next + 1);
+            return value;
+        }
+
+    }
+
+}
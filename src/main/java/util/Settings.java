@@ -10,5 +10,18 @@ public class Settings {
     public static boolean ENABLE_CHUNK_GRID = false;
     public static boolean ENABLE_DEBUG = true;
     public static float DEBUG_LINE_SIZE = 2;
+    public static int CHUNK_MESH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    public static int CHUNK_UPLOADS_PER_FRAME = 8;
+    public static boolean ENABLE_INDIRECT_DRAW = true;
+    public static int CHUNK_VIEW_RADIUS = 6;
+    public static int CHUNK_SIMULATION_RADIUS = 3;
+    public static int CHUNK_LOADS_PER_FRAME = 4;
+    public static int CHUNK_RENDERER_POOL_SIZE = 16;
+    public static String REGION_DIRECTORY = "overworld";
+    // 0 picks a random seed for a new world
+    public static long WORLD_SEED = 0;
+    public static float AUTOSAVE_INTERVAL = 60;
+    public static boolean SAVE_COMPACT = false;
+    public static boolean SAVE_GZIP = false;
 
 }
@@ -0,0 +1,74 @@
+package world;
+
+import block.ChunkData;
+import util.Logger;
+import util.LongMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ChunkSaver {
+
+    private final RegionStorage regions;
+    // One thread, so writes to a region file happen in the order they were queued
+    private final ExecutorService io;
+    // Snapshots queued but not yet on disk, by LongMap.key(chunkX, chunkY); loads check here first
+    private final ConcurrentHashMap<Long, ChunkData> pending = new ConcurrentHashMap<>();
+
+    public ChunkSaver(RegionStorage regions) {
+        this.regions = regions;
+        io = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chunk-saver");
+            // close() waits for queued writes; a daemon thread can't hold up a crash exit
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void save(ChunkData data) {
+        // data must not be shared with the live chunk, the write happens later on the I/O thread
+        long key = LongMap.key(data.getPosition().x, data.getPosition().y);
+        pending.put(key, data);
+        io.execute(() -> write(key, data));
+    }
+
+    public ChunkData getPending(int chunkX, int chunkY) {
+        return pending.get(LongMap.key(chunkX, chunkY));
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public void close() {
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(30, TimeUnit.SECONDS)) Logger.warning("Gave up waiting for", pending.size(), "chunks to save.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(long key, ChunkData data) {
+        int chunkX = data.getPosition().x, chunkY = data.getPosition().y;
+        try {
+            // Always written, even when all air: a missing entry would be generated again
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            data.write(new DataOutputStream(bytes));
+            // Deflated here, before the region is locked, so loads from the same region only wait for the write itself
+            regions.writeChunk(chunkX, chunkY, RegionFile.compress(bytes.toByteArray()));
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
+            Logger.warning("Failed to save chunk at", chunkX, chunkY);
+        } finally {
+            // A newer snapshot of the same chunk may have been queued meanwhile; leave that one
+            pending.remove(key, data);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package world;
+
+import block.Chunk;
+import org.joml.Vector2f;
+import org.joml.Vector2i;
+import util.Settings;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+
+public class ChunkStreamer {
+
+    // Chunks beyond the unload radius that region files stay open for
+    private static final int REGION_KEEP_MARGIN = 8;
+
+    private final Scene world;
+
+    // Chunk the view is centred on, set by update()
+    private final Vector2i center = new Vector2i();
+    private boolean hasCenter = false;
+
+    // Reused for the chunks to load or unload on each update
+    private final ArrayList<Vector2i> toLoad = new ArrayList<>();
+    private final ArrayList<Vector2i> toUnload = new ArrayList<>();
+    private boolean pending = false;
+
+    public ChunkStreamer(Scene world) {
+        this.world = world;
+    }
+
+    public void update(Vector2f focus) {
+        update(focus, Settings.CHUNK_LOADS_PER_FRAME);
+    }
+
+    public void update(Vector2f focus, int maxLoads) {
+        // focus is in world pixels, e.g. the camera or player position
+        float chunkSize = Chunk.SIZE * Settings.BLOCK_SIZE;
+        int chunkX = (int) Math.floor(focus.x / chunkSize);
+        int chunkY = (int) Math.floor(focus.y / chunkSize);
+
+        if (!hasCenter || !center.equals(chunkX, chunkY)) {
+            center.set(chunkX, chunkY);
+            hasCenter = true;
+            pending = true;
+        }
+        if (!pending) return;
+
+        // Work out what is missing or too far only when the center moves or work was left over
+        toLoad.clear();
+        toUnload.clear();
+        int radius = Settings.CHUNK_VIEW_RADIUS;
+        for (int y = chunkY - radius; y <= chunkY + radius; y++) {
+            for (int x = chunkX - radius; x <= chunkX + radius; x++) {
+                // Chunks that would load as all air read as air anyway, so they stay unloaded
+                if (isInRange(x, y, radius) && world.getLoadedChunk(x, y) == null && world.hasUnloadedChunk(x, y)) {
+                    toLoad.add(new Vector2i(x, y));
+                }
+            }
+        }
+        for (Chunk chunk : world.getLoadedChunks()) {
+            // One chunk of slack stops chunks on the edge from reloading every time the center wobbles
+            if (!isInRange(chunk.getPosition().x, chunk.getPosition().y, radius + 1)) toUnload.add(chunk.getPosition());
+        }
+
+        // Unloading is cheap; loading rebuilds lighting and meshes, so it is spread over frames, nearest first
+        for (Vector2i pos : toUnload) {
+            world.unloadChunk(pos.x, pos.y);
+        }
+        // Regions are kept a little past the unload radius so walking along a region border doesn't reopen them
+        if (!toUnload.isEmpty()) world.closeRegionsOutside(chunkX, chunkY, radius + 1 + REGION_KEEP_MARGIN);
+        toLoad.sort(Comparator.comparingLong(pos -> pos.distanceSquared(center)));
+        int loads = Math.min(toLoad.size(), maxLoads);
+        for (int i = 0; i < loads; i++) {
+            world.getChunk(toLoad.get(i));
+        }
+        pending = toLoad.size() > loads;
+    }
+
+    public boolean isSimulated(double x, double y) {
+        // Entities only move where the terrain around them is loaded
+        if (!hasCenter) return true;
+        float chunkSize = Chunk.SIZE * Settings.BLOCK_SIZE;
+        return isInRange((int) Math.floor(x / chunkSize), (int) Math.floor(y / chunkSize), Settings.CHUNK_SIMULATION_RADIUS);
+    }
+
+    private boolean isInRange(int chunkX, int chunkY, int radius) {
+        int dx = chunkX - center.x, dy = chunkY - center.y;
+        return dx * dx + dy * dy <= radius * radius;
+    }
+
+}
@@ -0,0 +1,200 @@
+package world;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class RegionFile {
+
+    // A region holds SIZE x SIZE chunks; the file is split into SECTOR_BYTES sectors
+    public static final int SIZE = 32;
+    public static final int SECTOR_BYTES = 4096;
+
+    // Header: one entry per chunk (x + y * SIZE) of first sector and stored byte length, 0 if absent
+    private static final int ENTRY_BYTES = 2 * Integer.BYTES;
+    private static final int HEADER_SECTORS = SIZE * SIZE * ENTRY_BYTES / SECTOR_BYTES;
+
+    // Each stored payload starts with a byte naming how the rest is compressed
+    private static final byte COMPRESSION_DEFLATE = 1;
+
+    // Every public method locks only this region, so chunk loads never wait on writes to other regions
+    private final File path;
+    private final int regionX, regionY;
+    // Opened on first use; a missing file is only created by a write
+    private RandomAccessFile file;
+    private boolean missing;
+    // Set once the storage evicts this region; later calls go to a fresh RegionFile
+    private boolean closed;
+    private final int[] offsets = new int[SIZE * SIZE];
+    private final int[] lengths = new int[SIZE * SIZE];
+    // Sectors in use by the header or a chunk, so rewrites can reuse the gaps
+    private final BitSet usedSectors = new BitSet();
+    // Read-only view of the whole file, remapped when a read reaches past it after the file grew
+    private MappedByteBuffer mapped;
+    // Reset and reused for every read rather than setting up native inflate state per chunk
+    private final Inflater inflater = new Inflater();
+
+    public RegionFile(File path, int regionX, int regionY) {
+        this.path = path;
+        this.regionX = regionX;
+        this.regionY = regionY;
+    }
+
+    public int getRegionX() {
+        return regionX;
+    }
+
+    public int getRegionY() {
+        return regionY;
+    }
+
+    private boolean open(boolean create) throws IOException {
+        if (closed) throw new IOException("Region file " + path + " is closed");
+        if (file != null) return true;
+        if (!create) {
+            // Remembered, so lookups while exploring don't keep hitting the filesystem
+            if (missing || !path.exists()) {
+                missing = true;
+                return false;
+            }
+        } else if (path.getParentFile() != null && !path.getParentFile().exists() && !path.getParentFile().mkdirs()) {
+            throw new IOException("Couldn't create " + path.getParentFile());
+        }
+        missing = false;
+        file = new RandomAccessFile(path, "rw");
+
+        if (file.length() < (long) HEADER_SECTORS * SECTOR_BYTES) {
+            file.setLength((long) HEADER_SECTORS * SECTOR_BYTES);
+        }
+        usedSectors.set(0, HEADER_SECTORS);
+
+        byte[] header = new byte[HEADER_SECTORS * SECTOR_BYTES];
+        file.seek(0);
+        file.readFully(header);
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            offsets[i] = readInt(header, i * ENTRY_BYTES);
+            lengths[i] = readInt(header, i * ENTRY_BYTES + Integer.BYTES);
+            if (offsets[i] != 0) usedSectors.set(offsets[i], offsets[i] + sectorsFor(lengths[i]));
+        }
+        return true;
+    }
+
+    public synchronized boolean hasChunk(int localX, int localY) throws IOException {
+        return open(false) && offsets[localX + localY * SIZE] != 0;
+    }
+
+    public synchronized ByteBuffer readMapped(int localX, int localY, ByteBuffer dest) throws IOException {
+        // Inflates straight from the mapped file into dest, growing it if needed; returns the flipped
+        // buffer holding the payload (possibly a new one), or null if the chunk isn't stored
+        int index = localX + localY * SIZE;
+        if (!open(false) || offsets[index] == 0) return null;
+
+        long start = (long) offsets[index] * SECTOR_BYTES;
+        if (mapped == null || start + lengths[index] > mapped.capacity()) {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        ByteBuffer stored = mapped.duplicate();
+        stored.limit((int) start + lengths[index]).position((int) start);
+
+        if (stored.get() != COMPRESSION_DEFLATE) throw new IOException("Unknown chunk compression " + stored.get((int) start));
+        inflater.reset();
+        inflater.setInput(stored);
+        dest.clear();
+        try {
+            while (!inflater.finished()) {
+                if (!dest.hasRemaining()) {
+                    ByteBuffer grown = ByteBuffer.allocate(dest.capacity() * 2);
+                    dest.flip();
+                    grown.put(dest);
+                    dest = grown;
+                }
+                if (inflater.inflate(dest) == 0 && inflater.needsInput()) throw new IOException("Truncated chunk payload");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt chunk payload", e);
+        }
+        dest.flip();
+        return dest;
+    }
+
+    public static byte[] compress(byte[] data) {
+        // Touches no region state, so the saver can compress before taking any lock
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        out.write(COMPRESSION_DEFLATE);
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    public synchronized boolean write(int localX, int localY, byte[] stored) throws IOException {
+        // stored comes from compress(). Returns false, writing nothing, if the region was closed in the meantime
+        if (closed) return false;
+        int index = localX + localY * SIZE;
+        open(true);
+
+        // Rewrite in place when it still fits, otherwise move to the first gap big enough
+        int sectors = sectorsFor(stored.length);
+        int offset = offsets[index];
+        if (offset == 0 || sectors > sectorsFor(lengths[index])) {
+            // Pick the new spot before freeing the old one, so the old copy isn't overwritten
+            int oldOffset = offset;
+            offset = findFreeSectors(sectors);
+            if (oldOffset != 0) usedSectors.clear(oldOffset, oldOffset + sectorsFor(lengths[index]));
+        } else {
+            usedSectors.clear(offset + sectors, offset + sectorsFor(lengths[index]));
+        }
+        usedSectors.set(offset, offset + sectors);
+
+        file.seek((long) offset * SECTOR_BYTES);
+        file.write(stored);
+        if (file.length() < (long) (offset + sectors) * SECTOR_BYTES) file.setLength((long) (offset + sectors) * SECTOR_BYTES);
+
+        // The header entry goes last, so a crash mid-write leaves a moved chunk's old copy readable
+        offsets[index] = offset;
+        lengths[index] = stored.length;
+        file.seek((long) index * ENTRY_BYTES);
+        file.writeInt(offset);
+        file.writeInt(stored.length);
+        return true;
+    }
+
+    public synchronized void close() throws IOException {
+        closed = true;
+        mapped = null;
+        inflater.end();
+        if (file != null) file.close();
+        file = null;
+    }
+
+    private int findFreeSectors(int count) {
+        int start = usedSectors.nextClearBit(HEADER_SECTORS);
+        while (true) {
+            int end = usedSectors.nextSetBit(start);
+            if (end == -1 || end - start >= count) return start;
+            start = usedSectors.nextClearBit(end);
+        }
+    }
+
+    private static int sectorsFor(int bytes) {
+        return (bytes + SECTOR_BYTES - 1) / SECTOR_BYTES;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+}
@@ -0,0 +1,90 @@
+package world;
+
+import util.LongMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+public class RegionStorage {
+
+    // The storage lock only guards the map of regions; file I/O happens under each RegionFile's own lock,
+    // so the game thread's loads don't wait on the saver writing elsewhere
+    private final File directory;
+    // Region files by LongMap.key(regionX, regionY), including ones not on disk yet; far ones are evicted by closeOutside()
+    private final LongMap<RegionFile> regions = new LongMap<>();
+    // Decoded payload of the last readChunkBuffer(), reused so loads don't allocate per chunk; game thread only
+    private ByteBuffer decodeBuffer = ByteBuffer.allocate(4096);
+
+    public RegionStorage(File directory) {
+        this.directory = directory;
+    }
+
+    public boolean hasChunk(int chunkX, int chunkY) throws IOException {
+        return getRegion(chunkX, chunkY).hasChunk(Math.floorMod(chunkX, RegionFile.SIZE), Math.floorMod(chunkY, RegionFile.SIZE));
+    }
+
+    public ByteBuffer readChunkBuffer(int chunkX, int chunkY) throws IOException {
+        // The returned buffer is only valid until the next call
+        ByteBuffer payload = getRegion(chunkX, chunkY).readMapped(Math.floorMod(chunkX, RegionFile.SIZE), Math.floorMod(chunkY, RegionFile.SIZE), decodeBuffer);
+        if (payload != null) decodeBuffer = payload;
+        return payload;
+    }
+
+    public void writeChunk(int chunkX, int chunkY, byte[] stored) throws IOException {
+        // stored is already compressed with RegionFile.compress(), outside of any lock. If the region is
+        // evicted between the lookup and the write, the write goes to a freshly opened one instead
+        while (!getRegion(chunkX, chunkY).write(Math.floorMod(chunkX, RegionFile.SIZE), Math.floorMod(chunkY, RegionFile.SIZE), stored)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public void closeOutside(int chunkX, int chunkY, int radius) throws IOException {
+        // Closes regions with no chunk within radius of the given chunk, so travelling doesn't keep
+        // every visited region's file, mapping and inflater open
+        ArrayList<RegionFile> far = new ArrayList<>();
+        synchronized (this) {
+            for (RegionFile region : regions.values()) {
+                int nearestX = Math.max(region.getRegionX() * RegionFile.SIZE, Math.min(chunkX, region.getRegionX() * RegionFile.SIZE + RegionFile.SIZE - 1));
+                int nearestY = Math.max(region.getRegionY() * RegionFile.SIZE, Math.min(chunkY, region.getRegionY() * RegionFile.SIZE + RegionFile.SIZE - 1));
+                int dx = nearestX - chunkX, dy = nearestY - chunkY;
+                if (dx * dx + dy * dy > radius * radius) far.add(region);
+            }
+            for (RegionFile region : far) {
+                regions.remove(LongMap.key(region.getRegionX(), region.getRegionY()));
+            }
+        }
+        for (RegionFile region : far) {
+            region.close();
+        }
+    }
+
+    public synchronized int getOpenRegions() {
+        return regions.size();
+    }
+
+    public void close() throws IOException {
+        ArrayList<RegionFile> open;
+        synchronized (this) {
+            open = new ArrayList<>(regions.values());
+            regions.clear();
+        }
+        for (RegionFile region : open) {
+            region.close();
+        }
+    }
+
+    private synchronized RegionFile getRegion(int chunkX, int chunkY) {
+        int regionX = Math.floorDiv(chunkX, RegionFile.SIZE), regionY = Math.floorDiv(chunkY, RegionFile.SIZE);
+        long key = LongMap.key(regionX, regionY);
+        RegionFile region = regions.get(key);
+        if (region == null) {
+            // Cheap to create; the file is only opened, or created, by the first call that needs it
+            region = new RegionFile(new File(directory, "r." + regionX + "." + regionY + ".region"), regionX, regionY);
+            regions.put(key, region);
+        }
+        return region;
+    }
+
+}
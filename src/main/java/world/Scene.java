@@ -2,7 +2,9 @@ package world;
 
 import block.BlockState;
 import block.BlockType;
+import block.ChunkData;
 import block.Chunk;
+import block.LightEngine;
 import component.Component;
 import component.ComponentSerializer;
 import component.Transform;
@@ -12,30 +14,71 @@ import core.GameObjectSerializer;
 import entity.Entity;
 import gui.GuiElement;
 import renderer.Renderer;
+import util.ByteBufferInputStream;
+import util.Logger;
+import util.LongMap;
+import util.Settings;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import org.joml.Vector2i;
 
-import java.io.FileWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Optional;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public abstract class Scene {
 
+    private static final String SAVE_FILE = "overworld.json";
+    private static final int SAVE_BUFFER_BYTES = 64 * 1024;
+
     protected Renderer renderer = new Renderer();
     protected Camera camera;
     protected boolean isRunning = false;
     protected ArrayList<GameObject> gameObjects = new ArrayList<>();
     protected ArrayList<GuiElement> guiElements = new ArrayList<>();
     protected ArrayList<Entity> entities = new ArrayList<>();
-    protected HashMap<Vector2i, Chunk> chunks = new HashMap<>();
+    // Keyed by LongMap.key(chunkX, chunkY), so lookups don't allocate
+    protected LongMap<Chunk> chunks = new LongMap<>();
+    // Unloaded chunks that weren't all air, restored when the chunk is loaded again
+    protected RegionStorage regions = new RegionStorage(new File(Settings.REGION_DIRECTORY));
+    // Writes chunk snapshots to the regions on a background thread
+    protected ChunkSaver saver = new ChunkSaver(regions);
+    protected float autosaveTimer = 0;
+    protected ChunkStreamer streamer = new ChunkStreamer(this);
     protected boolean worldLoaded = false;
-    protected WorldGenerator generator = new WorldGenerator(this);
+    // Fills in chunks that were never saved
+    protected WorldGenerator generator = new WorldGenerator(loadSeed());
+    protected LightEngine lightEngine = new LightEngine(this);
+    protected int lowestChunkY = 0;
+    protected int highestChunkY = -1;
+    // Chunk of the last block lookup; collision and generation read runs of nearby blocks
+    private Chunk lastBlockChunk;
+    // Total chunks ever created, to confirm reads don't grow the world
+    protected int chunksCreated = 0;
 
     public Scene() {
 
@@ -46,6 +89,7 @@ public abstract class Scene {
     }
 
     public void start() {
+        renderer.start();
         for (GuiElement element : guiElements) {
             element.start();
             renderer.addGuiElement(element);
@@ -62,10 +106,23 @@ public abstract class Scene {
     }
 
     public Chunk getChunk(Vector2i chunkPos) {
-        Chunk chunk = chunks.get(chunkPos);
+        return getChunk(chunkPos.x, chunkPos.y);
+    }
+
+    public Chunk getChunk(int chunkX, int chunkY) {
+        long key = LongMap.key(chunkX, chunkY);
+        Chunk chunk = chunks.get(key);
         if (chunk == null) {
-            chunk = new Chunk(chunkPos, this);
-            chunks.put(chunkPos, chunk);
+            chunk = readChunk(chunkX, chunkY);
+            // Freshly generated chunks aren't modified, so they stay out of the saves until edited
+            if (chunk == null) chunk = new Chunk(new Vector2i(chunkX, chunkY), this, generator.generateChunk(chunkX, chunkY));
+            chunksCreated++;
+            chunks.put(key, chunk);
+            linkNeighbours(chunk);
+            if (chunks.size() == 1) lowestChunkY = highestChunkY = chunkY;
+            lowestChunkY = Math.min(lowestChunkY, chunkY);
+            highestChunkY = Math.max(highestChunkY, chunkY);
+            lightEngine.markDirty(chunk);
             if (isRunning) {
                 chunk.start();
                 renderer.addChunk(chunk);
@@ -75,27 +132,220 @@ public abstract class Scene {
     }
 
     public Chunk getLoadedChunk(Vector2i chunkPos) {
-        return chunks.get(chunkPos);
+        return chunks.get(chunkPos.x, chunkPos.y);
+    }
+
+    public Chunk getLoadedChunk(int chunkX, int chunkY) {
+        return chunks.get(chunkX, chunkY);
+    }
+
+    private void linkNeighbours(Chunk chunk) {
+        Vector2i pos = chunk.getPosition();
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx == 0 && dy == 0) continue;
+                Chunk neighbour = chunks.get(pos.x + dx, pos.y + dy);
+                chunk.setNeighbour(dx, dy, neighbour);
+                if (neighbour != null) neighbour.setNeighbour(-dx, -dy, chunk);
+            }
+        }
+    }
+
+    private void unlinkNeighbours(Chunk chunk) {
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                if (dx == 0 && dy == 0) continue;
+                Chunk neighbour = chunk.getNeighbour(dx, dy);
+                if (neighbour != null) neighbour.setNeighbour(-dx, -dy, null);
+                chunk.setNeighbour(dx, dy, null);
+            }
+        }
+    }
+
+    public Collection<Chunk> getLoadedChunks() {
+        return chunks.values();
+    }
+
+    public boolean hasUnloadedChunk(int chunkX, int chunkY) {
+        // Whether loading the chunk would give anything but air
+        if (generator.hasTerrain(chunkY)) return true;
+        try {
+            return saver.getPending(chunkX, chunkY) != null || regions.hasChunk(chunkX, chunkY);
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
+            return false;
+        }
+    }
+
+    public void unloadChunk(int chunkX, int chunkY) {
+        // Saves the chunk so it comes back as it was; lighting and meshes are rebuilt on load
+        Chunk chunk = chunks.get(chunkX, chunkY);
+        if (chunk == null) return;
+        saveChunk(chunk);
+        deleteChunk(chunk.getPosition());
+    }
+
+    private Chunk readChunk(int chunkX, int chunkY) {
+        // A snapshot still waiting to be written is newer than what is on disk
+        ChunkData pending = saver.getPending(chunkX, chunkY);
+        if (pending != null) return new Chunk(this, pending.copy());
+
+        try {
+            ByteBuffer data = regions.readChunkBuffer(chunkX, chunkY);
+            if (data == null) return null;
+            return new Chunk(this, ChunkData.read(new Vector2i(chunkX, chunkY), new DataInputStream(new ByteBufferInputStream(data))));
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
+            Logger.warning("Failed to read chunk at", chunkX, chunkY, "- it will be generated again.");
+            return null;
+        }
+    }
+
+    private void saveChunk(Chunk chunk) {
+        // Unchanged chunks already match what is stored
+        if (!chunk.isModified()) return;
+        chunk.setModified(false);
+        saver.save(chunk.getSaveData());
+    }
+
+    public void autosave() {
+        // Only snapshots on this thread; serializing and writing happen on the saver's thread
+        for (Chunk chunk : chunks.values()) {
+            saveChunk(chunk);
+        }
+    }
+
+    public int getPendingSaves() {
+        return saver.getPendingCount();
+    }
+
+    public void closeRegionsOutside(int chunkX, int chunkY, int radius) {
+        try {
+            regions.closeOutside(chunkX, chunkY, radius);
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
+        }
+    }
+
+    public int getOpenRegions() {
+        return regions.getOpenRegions();
+    }
+
+    private static long loadSeed() {
+        // The seed is kept beside the region files, so a saved world keeps generating the same terrain
+        Path path = Paths.get(Settings.REGION_DIRECTORY, "seed");
+        try {
+            if (Files.exists(path)) return Long.parseLong(Files.readString(path).trim());
+
+            long seed = Settings.WORLD_SEED != 0 ? Settings.WORLD_SEED : new Random().nextLong();
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, Long.toString(seed));
+            return seed;
+        } catch (IOException | NumberFormatException e) {
+            e.printStackTrace(Logger.getErr());
+            Logger.warning("Failed to read or write the world seed, using", Settings.WORLD_SEED);
+            return Settings.WORLD_SEED;
+        }
+    }
+
+    public WorldGenerator getGenerator() {
+        return generator;
     }
 
     public void deleteChunk(Vector2i chunkPos) {
-        Chunk chunk = chunks.remove(chunkPos);
-        if (chunk != null) renderer.removeChunk(chunk);
+        Chunk chunk = chunks.remove(LongMap.key(chunkPos.x, chunkPos.y));
+        if (chunk == null) return;
+        unlinkNeighbours(chunk);
+        if (lastBlockChunk == chunk) lastBlockChunk = null;
+        // Narrow the bounds again, or getSurfaceY would scan every row ever visited
+        if (chunkPos.y == lowestChunkY || chunkPos.y == highestChunkY) updateChunkYBounds();
+        lightEngine.removeChunk(chunk);
+        renderer.removeChunk(chunk);
+    }
+
+    private void updateChunkYBounds() {
+        lowestChunkY = 0;
+        highestChunkY = -1;
+        boolean first = true;
+        for (Chunk chunk : chunks.values()) {
+            int chunkY = chunk.getPosition().y;
+            lowestChunkY = first ? chunkY : Math.min(lowestChunkY, chunkY);
+            highestChunkY = first ? chunkY : Math.max(highestChunkY, chunkY);
+            first = false;
+        }
+    }
+
+    public void destroy() {
+        // Frees GPU resources; the GL context has to still be current
+        renderer.delete();
+        saver.close();
+        try {
+            regions.close();
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
+        }
+    }
+
+    public ChunkStreamer getStreamer() {
+        return streamer;
+    }
+
+    public LightEngine getLightEngine() {
+        return lightEngine;
+    }
+
+    public void flushLighting() {
+        lightEngine.flush();
+    }
+
+    public int getChunksCreated() {
+        return chunksCreated;
     }
 
+    private Chunk getBlockChunk(int x, int y, boolean create) {
+        int chunkX = Math.floorDiv(x, Chunk.SIZE), chunkY = Math.floorDiv(y, Chunk.SIZE);
+        Chunk chunk = lastBlockChunk;
+        if (chunk != null) {
+            int dx = chunkX - chunk.getPosition().x, dy = chunkY - chunk.getPosition().y;
+            if (dx >= -1 && dx <= 1 && dy >= -1 && dy <= 1) chunk = chunk.getNeighbour(dx, dy);
+            else chunk = null;
+        }
+        if (chunk == null) chunk = create ? getChunk(chunkX, chunkY) : chunks.get(chunkX, chunkY);
+        // Only remember loaded chunks, a miss has no neighbour links to follow
+        if (chunk != null) lastBlockChunk = chunk;
+        return chunk;
+    }
+
+    // Block queries only read; anything outside the loaded world is air with default state and no light
+
     public BlockType getBlockType(int x, int y) {
-        Vector2i chunkPos = new Vector2i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE));
-        return getChunk(chunkPos).getBlockType(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
+        Chunk chunk = getBlockChunk(x, y, false);
+        if (chunk == null) return null;
+        return chunk.getBlockType(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
     }
 
     public BlockState getBlockState(int x, int y) {
-        Vector2i chunkPos = new Vector2i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE));
-        return getChunk(chunkPos).getBlockState(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
+        Chunk chunk = getBlockChunk(x, y, false);
+        if (chunk == null) return new BlockState();
+        return chunk.getBlockState(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
     }
 
     public int getBlockLight(int x, int y) {
-        Vector2i chunkPos = new Vector2i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE));
-        return getChunk(chunkPos).getBlockLight(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
+        Chunk chunk = getBlockChunk(x, y, false);
+        if (chunk == null) return 0;
+        return chunk.getBlockLight(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE));
+    }
+
+    public int getSurfaceY(int x) {
+        // Topmost block in the column, or Integer.MIN_VALUE if the loaded column is empty
+        int chunkX = Math.floorDiv(x, Chunk.SIZE);
+        for (int chunkY = highestChunkY; chunkY >= lowestChunkY; chunkY--) {
+            Chunk chunk = chunks.get(chunkX, chunkY);
+            if (chunk == null) continue;
+            int height = chunk.getHeight(Math.floorMod(x, Chunk.SIZE));
+            if (height >= 0) return chunkY * Chunk.SIZE + height;
+        }
+        return Integer.MIN_VALUE;
     }
 
     public GameObject createGameObject(String name) {
@@ -122,8 +372,7 @@ public abstract class Scene {
     }
 
     public void setBlock(int x, int y, BlockType type, BlockState state) {
-        Vector2i chunkPos = new Vector2i(Math.floorDiv(x, Chunk.SIZE), Math.floorDiv(y, Chunk.SIZE));
-        getChunk(chunkPos).setBlock(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE), type, state);
+        getBlockChunk(x, y, true).setBlock(Math.floorMod(x, Chunk.SIZE), Math.floorMod(y, Chunk.SIZE), type, state);
     }
 
     public void setBlock(int x, int y, BlockType type) {
@@ -166,45 +415,68 @@ public abstract class Scene {
     }
 
     public void save() {
+        autosave();
+
         Gson gson = new GsonBuilder()
-                .setPrettyPrinting()
                 .registerTypeAdapter(Component.class, new ComponentSerializer())
                 .registerTypeAdapter(GameObject.class, new GameObjectSerializer())
                 .create();
 
-        try {
-            FileWriter writer = new FileWriter("overworld.json");
-            ArrayList<GameObject> objsToSerialize = new ArrayList<>();
+        // Objects are written one at a time straight to the file, never as one big string
+        Path path = Paths.get(Settings.SAVE_GZIP ? SAVE_FILE + ".gz" : SAVE_FILE);
+        long start = System.nanoTime();
+        int count = 0;
+        try (OutputStream out = openSaveOutput(path);
+             JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (!Settings.SAVE_COMPACT) writer.setIndent("  ");
+            writer.beginArray();
             for (GameObject obj : gameObjects) {
                 if (obj.getDoSerialize()) {
-                    objsToSerialize.add(obj);
+                    gson.toJson(obj, GameObject.class, writer);
+                    count++;
                 }
             }
-            writer.write(gson.toJson(objsToSerialize));
-            writer.close();
+            writer.endArray();
         } catch (IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(Logger.getErr());
+            Logger.warning("Failed to save", path);
+            return;
+        }
+
+        try {
+            Logger.info("Saved", count, "objects to", path, "-", Files.size(path), "bytes in", (System.nanoTime() - start) / 1000000, "ms");
+        } catch (IOException e) {
+            e.printStackTrace(Logger.getErr());
         }
     }
 
     public void load() {
         Gson gson = new GsonBuilder()
-                .setPrettyPrinting()
                 .registerTypeAdapter(Component.class, new ComponentSerializer())
                 .registerTypeAdapter(GameObject.class, new GameObjectSerializer())
                 .create();
-        String inFile = "";
+
+        // Prefer the file matching the current setting, but read either kind
+        Path path = Paths.get(Settings.SAVE_GZIP ? SAVE_FILE + ".gz" : SAVE_FILE);
+        if (!Files.exists(path)) path = Paths.get(Settings.SAVE_GZIP ? SAVE_FILE : SAVE_FILE + ".gz");
         try {
-            inFile = new String(Files.readAllBytes(Paths.get("overworld.json")));
+            if (!Files.exists(path) || Files.size(path) == 0) return;
         } catch (IOException e) {
-            e.printStackTrace();
+            e.printStackTrace(Logger.getErr());
+            return;
         }
 
-        if (!inFile.equals("")) {
-            int maxGObjID = -1;
-            int maxCompID = -1;
-            GameObject[] objs = gson.fromJson(inFile, GameObject[].class);
-            for (GameObject obj : objs) {
+        long start = System.nanoTime();
+        int count = 0;
+        int maxGObjID = -1;
+        int maxCompID = -1;
+        try (InputStream in = openSaveInput(path);
+             JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            // One object in memory at a time rather than the whole file and array
+            reader.beginArray();
+            while (reader.hasNext()) {
+                GameObject obj = gson.fromJson(reader, GameObject.class);
+                count++;
 //                addGameObject(obj);
 
                 for (Component c: obj.getAllComponents()) {
@@ -216,15 +488,34 @@ public abstract class Scene {
                     maxGObjID = obj.getUID();
                 }
             }
-
-            maxGObjID++;
-            maxCompID++;
-            GameObject.init(maxGObjID);
-            Component.init(maxCompID);
-            worldLoaded = true;
+            reader.endArray();
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace(Logger.getErr());
+            Logger.warning("Failed to load", path);
+            return;
         }
+
+        maxGObjID++;
+        maxCompID++;
+        GameObject.init(maxGObjID);
+        Component.init(maxCompID);
+        worldLoaded = true;
+        Logger.info("Loaded", count, "objects from", path, "in", (System.nanoTime() - start) / 1000000, "ms");
+    }
+
+    private static OutputStream openSaveOutput(Path path) throws IOException {
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)), SAVE_BUFFER_BYTES);
+        return Settings.SAVE_GZIP ? new GZIPOutputStream(out, SAVE_BUFFER_BYTES) : out;
+    }
+
+    private static InputStream openSaveInput(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ)), SAVE_BUFFER_BYTES);
+        // Gzipped saves start with 1f 8b, whatever the file is called
+        in.mark(2);
+        boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+        in.reset();
+        return gzip ? new GZIPInputStream(in, SAVE_BUFFER_BYTES) : in;
     }
 
-    public abstract void generate();
 
 }
@@ -1,146 +1,157 @@
 package world;
 
+import block.BlockState;
+import block.BlockStorage;
 import block.BlockType;
-
-import java.util.function.Predicate;
-import java.util.Random;
+import block.Chunk;
 
 public class WorldGenerator {
 
-    private final Scene world;
-    private final Random random;
-
-    private double interpolate(double a, double b, double t) {
-        if (t < 0)
-            return a;
-        if (t > 1)
-            return b;
-
-        //return (b - a) * t + a; // linear
-        return (b - a) * (3 - t * 2) * t * t + a; // cubic
-        //return (b - a) * (t * (t * 6 - 15) + 10) * t * t * t + a; // whatever the hell this is
+    // Block heights of the terrain surface, and the spacing of its fine and coarse hills
+    private static final int SURFACE_LOW = -10;
+    private static final int SURFACE_HIGH = 50;
+    private static final double HILL_SPACING = 14;
+    private static final double MOUNTAIN_SPACING = HILL_SPACING * 4;
+
+    // Dirt under the surface, its top block grassy
+    private static final int DIRT_MIN_DEPTH = 6;
+    private static final int DIRT_MAX_DEPTH = 9;
+    private static final double DIRT_SPACING = 3;
+
+    // Caves follow the middle contour of a noise field, so they wind on through chunk borders
+    private static final int CAVE_LOW = -90;
+    private static final int CAVE_HIGH = 50;
+    private static final double CAVE_SPACING_X = 24;
+    private static final double CAVE_SPACING_Y = 16;
+    private static final double CAVE_WIDTH = 0.06;
+
+    // Phylumus shows up as small pockets in the stone where its noise peaks
+    private static final int ORE_LOW = -50;
+    private static final int ORE_HIGH = 20;
+    private static final double ORE_SPACING = 4;
+    private static final double ORE_THRESHOLD = 0.85;
+
+    // Each noise layer hashes the seed with its own salt so they don't line up
+    private static final long HILL_SALT = 1;
+    private static final long MOUNTAIN_SALT = 2;
+    private static final long DIRT_SALT = 3;
+    private static final long CAVE_SALT = 4;
+    private static final long ORE_SALT = 5;
+
+    private final long seed;
+
+    public WorldGenerator(long seed) {
+        this.seed = seed;
     }
 
-    public WorldGenerator(Scene world) {
-        this.random = new Random();
-        this.world = world;
+    public long getSeed() {
+        return seed;
     }
 
-    public Scene getWorld() {
-        return world;
+    public boolean hasTerrain(int chunkY) {
+        // Chunks wholly above the highest surface generate as air
+        return chunkY * Chunk.SIZE <= SURFACE_HIGH;
     }
 
-    public void setRect(int x, int y, int w, int h, BlockType block) {
-        for (int yPos = y; yPos < y + h; yPos++) {
-            for (int xPos = x; xPos < x + w; xPos++) {
-                world.setBlock(xPos, yPos, block);
+    public BlockStorage generateChunk(int chunkX, int chunkY) {
+        // Depends only on the seed and the chunk position and keeps no state, so chunks can be
+        // generated in any order, on any thread, and regenerated instead of saved when unmodified
+        BlockStorage blocks = new BlockStorage();
+        if (!hasTerrain(chunkY)) return blocks;
+
+        BlockState stoneState = BlockType.stone.defaultState();
+        BlockState dirtState = BlockType.dirt.defaultState();
+        BlockState grassState = BlockType.grassy_dirt.defaultState();
+        BlockState oreState = BlockType.phylumus_block.defaultState();
+
+        for (int x = 0; x < Chunk.SIZE; x++) {
+            int worldX = chunkX * Chunk.SIZE + x;
+            int surface = getSurfaceHeight(worldX);
+            int dirtDepth = getDirtDepth(worldX);
+
+            for (int y = 0; y < Chunk.SIZE; y++) {
+                int worldY = chunkY * Chunk.SIZE + y;
+                if (worldY > surface) break;
+
+                int index = x + y * Chunk.SIZE;
+                if (worldY == surface) {
+                    blocks.set(index, BlockType.grassy_dirt, grassState);
+                } else if (worldY > surface - dirtDepth) {
+                    blocks.set(index, BlockType.dirt, dirtState);
+                } else if (isCave(worldX, worldY)) {
+                    // Caves only cut through stone, leaving the dirt above them in place
+                    continue;
+                } else if (isOre(worldX, worldY)) {
+                    blocks.set(index, BlockType.phylumus_block, oreState);
+                } else {
+                    blocks.set(index, BlockType.stone, stoneState);
+                }
             }
         }
+        return blocks;
     }
 
-    public void generateBaseTerrain(int low, int high, int space, BlockType block) {
-        int[] heights = new int[100 / space + 2];
-        for (int i = 0; i < heights.length; i++) {
-            heights[i] = (int) (random.nextDouble() * (high - low + 1)) + low;
-        }
-
-        setRect(-50, -50, 100, low, block);
+    public int getSurfaceHeight(int x) {
+        double hills = noise(HILL_SALT, x / HILL_SPACING);
+        double mountains = noise(MOUNTAIN_SALT, x / MOUNTAIN_SPACING);
+        return (int) Math.floor(SURFACE_LOW + (SURFACE_HIGH - SURFACE_LOW) * (0.25 * hills + 0.75 * mountains));
+    }
 
-        for (int x = 0; x < 100; x++) {
-            int i1 = Math.floorDiv(x, space);
-            int i2 = Math.floorDiv(x, space * 4);
-            double t1 = (double) Math.floorMod(x, space) / space;
-            double t2 = (double) Math.floorMod(x, space * 4) / (space * 4);
+    private int getDirtDepth(int x) {
+        return Math.min(DIRT_MAX_DEPTH, DIRT_MIN_DEPTH + (int) (noise(DIRT_SALT, x / DIRT_SPACING) * (DIRT_MAX_DEPTH - DIRT_MIN_DEPTH + 1)));
+    }
 
-            double max = 0.25 * interpolate(heights[i1], heights[i1 + 1], t1) + 0.75 * interpolate(heights[i2], heights[i2 + 1], t2);
+    private boolean isCave(int x, int y) {
+        if (y < CAVE_LOW || y > CAVE_HIGH) return false;
+        return Math.abs(noise(CAVE_SALT, x / CAVE_SPACING_X, y / CAVE_SPACING_Y) - 0.5) < CAVE_WIDTH;
+    }
 
-            for (int y = low; y <= max; y++) {
-                world.setBlock(x - 50, y - 50, block);
-            }
-        }
+    private boolean isOre(int x, int y) {
+        if (y < ORE_LOW || y > ORE_HIGH) return false;
+        return noise(ORE_SALT, x / ORE_SPACING, y / ORE_SPACING) > ORE_THRESHOLD;
     }
 
-    public void applyTopLayer(int low, int depth, BlockType block, Predicate<BlockType> replace) {
-        for (int x = 0; x < 100; x++) {
-            int stamina = depth;
-            for (int y = 100 - 1; y >= 0; y--) {
-                if (world.getBlockType(x - 50, y - 50) == null) {
-                    if (y >= low) stamina = depth;
-                    else break;
-                } else if (stamina >= 0 && replace.test(world.getBlockType(x - 50, y - 50)))
-                    world.setBlock(x - 50, y - 50, block);
-                stamina -= y < low ? 3 : 1;
-            }
-        }
+    private double noise(long salt, double x) {
+        // Value noise: random values at whole coordinates, smoothly interpolated in between
+        int i = (int) Math.floor(x);
+        return interpolate(random(salt, i, 0), random(salt, i + 1, 0), x - i);
     }
 
-    public void applyTopLayer(int low, int minDepth, int maxDepth, int space, BlockType block, Predicate<BlockType> replace) {
-        int[] depths = new int[100 / space + 2];
-        for (int i = 0; i < depths.length; i++) {
-            depths[i] = (int) (random.nextDouble() * (maxDepth - minDepth + 1)) + minDepth;
-        }
+    private double noise(long salt, double x, double y) {
+        int i = (int) Math.floor(x), j = (int) Math.floor(y);
+        double tx = x - i, ty = y - j;
+        double bottom = interpolate(random(salt, i, j), random(salt, i + 1, j), tx);
+        double top = interpolate(random(salt, i, j + 1), random(salt, i + 1, j + 1), tx);
+        return interpolate(bottom, top, ty);
+    }
 
-        for (int x = 0; x < 100; x++) {
-            int i = Math.floorDiv(x, space);
-            double t = (double) Math.floorMod(x, space) / space;
-
-            int depth = (int) interpolate(depths[i], depths[i + 1], t);
-
-            int stamina = depth;
-            boolean hit = false;
-            for (int y = 100 - 1; y >= 0; y--) {
-                if (world.getBlockType(x - 50, y - 50) == null) {
-                    if (y >= low) stamina = hit ? depth / 2 : depth;
-                    else break;
-                } else if (stamina >= 0 && replace.test(world.getBlockType(x - 50, y - 50))) {
-                    world.setBlock(x - 50, y - 50, block);
-                    hit = true;
-                }
-                stamina -= y < low ? 2 : 1;
-            }
-        }
+    private double random(long salt, int x, int y) {
+        // Hashes the seed, layer and coordinates into [0, 1), the same every time for the same inputs
+        long hash = mix(seed ^ salt * 0x9E3779B97F4A7C15L);
+        hash = mix(hash + x);
+        hash = mix(hash + y);
+        return (hash >>> 11) * 0x1.0p-53;
     }
 
-    public void worms(int minY, int maxY, int maxPerChunk, int minW, int maxW, int space, int minL, int maxL, int maxDirShift, BlockType block, Predicate<BlockType> replace) {
-        int lastChunk = Math.floorDiv(100, 16);
-        for (int chunk = 0; chunk <= lastChunk; chunk++) {
-            int numWorms = (int) (random.nextDouble() * (maxPerChunk + 1));
-            for (int worm = 0; worm < numWorms; worm++) {
-                int[] nodeR = new int[(int) (random.nextDouble() * (maxL - minL + 1)) + minL];
-                nodeR[0] = (int) (random.nextDouble() * 360);
-                for (int i = 1; i < nodeR.length; i++) {
-                    int r = nodeR[i - 1];
-                    int lowR = Math.floorMod(r - maxDirShift, 360);
-                    int highR = Math.floorMod(r + maxDirShift, 360);
-                    if (r > 85 && lowR < 95 || r > 265 && lowR < 275) lowR = r;
-                    if (r < 95 && highR > 85 || r < 275 && highR > 265) highR = r;
-
-                    nodeR[i] = Math.floorMod((int) (random.nextDouble() * (highR - lowR + 1)) + lowR, 360);
-                }
+    private static long mix(long hash) {
+        // MurmurHash3's 64-bit finalizer
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE53E1A85L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
 
-                float[] nodeX = new float[nodeR.length + 1];
-                float[] nodeY = new float[nodeR.length + 1];
-                nodeX[0] = (int) (random.nextDouble() * 16) + chunk * 16;
-                nodeY[0] = (int) (random.nextDouble() * (maxY - minY + 1) / 2d) + (int) (random.nextDouble() * (maxY - minY + 1) / 2d) + minY;
-                for (int i = 0; i < nodeR.length; i++) {
-                    nodeX[i + 1] = nodeX[i] + (float) (Math.cos(Math.toRadians(nodeR[i])) * space);
-                    nodeY[i + 1] = nodeY[i] + (float) (Math.sin(Math.toRadians(nodeR[i])) * space);
-                }
+    private static double interpolate(double a, double b, double t) {
+        if (t < 0)
+            return a;
+        if (t > 1)
+            return b;
 
-                for (int i = 0; i < nodeX.length; i++) {
-                    float nx = nodeX[i];
-                    float ny = nodeY[i];
-                    float r = (float) (random.nextDouble() * (maxW - minW) + minW) / 2;
-                    for (float x = -r + 0.5f; x <= r + 0.5f; x++) {
-                        for (float y = -r + 0.5f; y <= r + 0.5f; y++) {
-                            if (Math.sqrt(x * x + y * y) <= r && replace.test(world.getBlockType(Math.round(nx + x - 50), Math.round(ny + y - 50)))) {
-                                world.setBlock(Math.round(nx + x - 50), Math.round(ny + y - 50), block);
-                            }
-                        }
-                    }
-                }
-            }
-        }
+        //return (b - a) * t + a; // linear
+        return (b - a) * (3 - t * 2) * t * t + a; // cubic
+        //return (b - a) * (t * (t * 6 - 15) + 10) * t * t * t + a; // whatever the hell this is
     }
 
 }
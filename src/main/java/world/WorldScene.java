@@ -6,6 +6,7 @@ import core.*;
 import entity.*;
 import gui.Button;
 import gui.GuiElement;
+import imgui.ImGui;
 import renderer.DebugDraw;
 import util.AssetPool;
 import util.Logger;
@@ -37,7 +38,10 @@ public class WorldScene extends Scene {
         holdingBlock = BlockType.phylumus_block;
         camera = new Camera(new Vector2f());
 
-        generate();
+        // Saved chunks stream in from their region files, the rest are generated from the seed
+        Logger.info("Loading world with seed", generator.getSeed());
+        streamer.update(camera.position, Integer.MAX_VALUE);
+        flushLighting();
 
         Player player = new Player(new Vector2d(), new Vector2d(), 0, null);
         player.respawn();
@@ -148,11 +152,14 @@ public class WorldScene extends Scene {
 
         viewContainer.update(dt);
         camera.adjustProjection();
+        streamer.update(camera.position);
 
         for (GuiElement element : guiElements) {
             if (element.isVisible()) element.update(dt);
         }
         for (Entity entity : entities) {
+            // Entities past the simulation radius wait for the terrain around them to load
+            if (!streamer.isSimulated(entity.getCenter().x, entity.getCenter().y)) continue;
             entity.update(dt);
             if (entity instanceof Player)
                 viewContainer.getComponent(EditorCamera.class).setTargetPos(new Vector2f().set(entity.getCenter()));
@@ -160,6 +167,17 @@ public class WorldScene extends Scene {
         for (Chunk chunk : chunks.values()) {
             chunk.update(dt);
         }
+
+        autosaveTimer += dt;
+        if (autosaveTimer >= Settings.AUTOSAVE_INTERVAL) {
+            autosaveTimer = 0;
+            autosave();
+        }
+
+        // Once per frame here, not in render(), which runs for both the picking and the main pass.
+        // This frame's light edits settle before any chunk is remeshed
+        flushLighting();
+        renderer.update();
     }
 
     @Override
@@ -169,17 +187,15 @@ public class WorldScene extends Scene {
 
     @Override
     public void imGui() {
-
-    }
-
-    @Override
-    public void generate() {
-        Logger.info("Generating world...");
-        generator.generateBaseTerrain(40, 100, 14, BlockType.stone);
-        generator.worms(-40, 100, 1, 6, 8, 3, 10, 40, 30, null, x -> x != null && x.equals(BlockType.stone));
-        generator.applyTopLayer(50, 6, 9, 3, BlockType.dirt, x -> x != null && x.equals(BlockType.stone));
-        generator.applyTopLayer(50, 1, BlockType.grassy_dirt, x -> x != null && x.equals(BlockType.dirt));
-        generator.worms(0, 70, 2, 1, 3, 2, 1, 3, 70, BlockType.phylumus_block, x -> x != null && x.equals(BlockType.stone));
+        ImGui.begin("World");
+        ImGui.text("Chunks loaded: " + chunks.size());
+        ImGui.text("Chunks created: " + chunksCreated);
+        ImGui.text("Chunks drawn: " + renderer.getChunksDrawn() + " (" + renderer.getChunksCulled() + " culled)");
+        ImGui.text("Chunk renderers: " + renderer.getChunkRenderersActive() + " active, " + renderer.getChunkRenderersPooled() + " pooled");
+        ImGui.text("Chunk GPU memory: " + renderer.getChunkGpuBytes() / 1024 + " KB");
+        ImGui.text("Chunks waiting to save: " + getPendingSaves());
+        ImGui.text("Region files open: " + getOpenRegions());
+        ImGui.end();
     }
 
 }
@@ -0,0 +1,126 @@
+package block;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import util.Settings;
+import world.Scene;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class ParallelLightSolverTest {
+
+    // A generated world reaching from deep caves up into open sky
+    private static final int MIN_X = -6, MAX_X = 5, MIN_Y = -8, MAX_Y = 3;
+    private static final long SEED = 42;
+
+    @TempDir
+    Path directory;
+
+    private String regionDirectory;
+    private long worldSeed;
+
+    @BeforeEach
+    public void setUp() {
+        // Scenes keep their seed and regions under REGION_DIRECTORY, kept out of the working directory here
+        regionDirectory = Settings.REGION_DIRECTORY;
+        worldSeed = Settings.WORLD_SEED;
+        Settings.WORLD_SEED = SEED;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Settings.REGION_DIRECTORY = regionDirectory;
+        Settings.WORLD_SEED = worldSeed;
+    }
+
+    @Test
+    public void parallelSolveMatchesSequentialLoading() {
+        Scene parallel = createScene("parallel");
+        for (int chunkY = MIN_Y; chunkY <= MAX_Y; chunkY++) {
+            for (int chunkX = MIN_X; chunkX <= MAX_X; chunkX++) {
+                parallel.getChunk(chunkX, chunkY);
+            }
+        }
+        new ParallelLightSolver(parallel).solve();
+
+        // One chunk per flush keeps LightEngine on its incremental path
+        Scene sequential = createScene("sequential");
+        List<int[]> order = new ArrayList<>();
+        for (int chunkY = MIN_Y; chunkY <= MAX_Y; chunkY++) {
+            for (int chunkX = MIN_X; chunkX <= MAX_X; chunkX++) {
+                order.add(new int[]{chunkX, chunkY});
+            }
+        }
+        Collections.shuffle(order, new Random(1));
+        for (int[] pos : order) {
+            sequential.getChunk(pos[0], pos[1]);
+            sequential.flushLighting();
+        }
+
+        assertArrayEquals(getLights(sequential), getLights(parallel));
+    }
+
+    @Test
+    public void parallelSolveMatchesIncrementalEdits() {
+        Scene world = createScene("edits");
+        for (int chunkY = MIN_Y; chunkY <= MAX_Y; chunkY++) {
+            for (int chunkX = MIN_X; chunkX <= MAX_X; chunkX++) {
+                world.getChunk(chunkX, chunkY);
+            }
+        }
+        world.flushLighting();
+
+        // Small batches of edits, including light sources, each settled incrementally
+        Random random = new Random(7);
+        BlockType[] types = {null, BlockType.stone, BlockType.dirt};
+        for (int batch = 0; batch < 20; batch++) {
+            for (int i = 0; i < 50; i++) {
+                int x = MIN_X * Chunk.SIZE + random.nextInt((MAX_X - MIN_X + 1) * Chunk.SIZE);
+                int y = MIN_Y * Chunk.SIZE + random.nextInt((MAX_Y - MIN_Y + 1) * Chunk.SIZE);
+                BlockType type = types[random.nextInt(types.length)];
+                for (BlockType light : BlockType.values()) {
+                    if (light.light() > 0 && random.nextInt(20) == 0) type = light;
+                }
+                world.setBlock(x, y, type);
+            }
+            world.flushLighting();
+        }
+        byte[] incremental = getLights(world);
+
+        new ParallelLightSolver(world).solve();
+        assertArrayEquals(incremental, getLights(world));
+    }
+
+    private Scene createScene(String name) {
+        Settings.REGION_DIRECTORY = directory.resolve(name).toString();
+        return new Scene() {
+            @Override
+            public void render() {
+
+            }
+        };
+    }
+
+    private static byte[] getLights(Scene world) {
+        byte[] lights = new byte[(MAX_X - MIN_X + 1) * (MAX_Y - MIN_Y + 1) * Chunk.SIZE * Chunk.SIZE];
+        int i = 0;
+        for (int chunkY = MIN_Y; chunkY <= MAX_Y; chunkY++) {
+            for (int chunkX = MIN_X; chunkX <= MAX_X; chunkX++) {
+                Chunk chunk = world.getLoadedChunk(chunkX, chunkY);
+                for (int index = 0; index < Chunk.SIZE * Chunk.SIZE; index++) {
+                    lights[i++] = chunk.getPackedLight(index);
+                }
+            }
+        }
+        return lights;
+    }
+
+}